@@ -19,7 +19,3 @@
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
 #-renamesourcefileattribute SourceFile
--keepclassmembernames class com.bin.david.form.core.SmartTable {
-    com.bin.david.form.core.TableMeasurer measurer;
-    com.bin.david.form.core.TableConfig config;
-}
\ No newline at end of file
@@ -9,6 +9,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
 
 import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.util.StartupTrace;
 
 import timber.log.Timber;
 
@@ -54,7 +55,11 @@ public class GlobalContext extends Application {
 
     @Override
     public void onCreate() {
+        var begin = StartupTrace.begin("Application.onCreate");
         super.onCreate();
         context = Contract.requireNonNull(getApplicationContext());
+        // Overlap reading the internal termdate file with activity creation
+        Prefetch.start(context);
+        StartupTrace.end("Application.onCreate", begin);
     }
 }
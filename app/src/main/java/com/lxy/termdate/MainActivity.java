@@ -3,12 +3,14 @@ package com.lxy.termdate;
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.view.Choreographer;
 
 import androidx.activity.ComponentActivity;
 import androidx.activity.EdgeToEdge;
@@ -16,218 +18,54 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.databinding.DataBindingUtil;
 
-import com.bin.david.form.core.SmartTable;
-import com.bin.david.form.core.TableConfig;
-import com.bin.david.form.core.TableMeasurer;
-import com.bin.david.form.data.CellRange;
-import com.bin.david.form.data.column.Column;
-import com.bin.david.form.data.format.draw.MultiLineDrawFormat;
-import com.bin.david.form.data.format.sequence.BaseSequenceFormat;
-import com.bin.david.form.data.style.FontStyle;
-import com.bin.david.form.data.style.LineStyle;
-import com.bin.david.form.data.table.ArrayTableData;
 import com.lxy.termdate.contract.Contract;
-import com.lxy.termdate.contract.Operator;
-import com.lxy.termdate.contract.Value;
-import com.lxy.termdate.data.Cell;
-import com.lxy.termdate.data.DeserializeResult;
-import com.lxy.termdate.data.MergeStates;
 import com.lxy.termdate.data.TermDateData;
+import com.lxy.termdate.data.TermDateSnapshot;
 import com.lxy.termdate.databinding.ActivityMainBinding;
-import com.lxy.termdate.enumset.OneEnumSet;
-import com.lxy.termdate.enumset.TwoEnumSet;
-import com.lxy.termdate.util.ArrayView;
-import com.lxy.termdate.util.CopyingInputStream;
-import com.lxy.termdate.util.DateUtil;
-import com.lxy.termdate.util.InstanceFieldAccessor;
+import com.lxy.termdate.util.ByteArrayAppender;
+import com.lxy.termdate.util.IOPipeline;
+import com.lxy.termdate.util.StartupTrace;
 import com.lxy.termdate.util.TermDateFileHandler;
 import com.lxy.termdate.util.ToastUtil;
+import com.lxy.termdate.util.WeekClock;
+import com.lxy.termdate.widget.TimetableView;
 
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.AccessMode;
-import java.nio.file.DirectoryNotEmptyException;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.NoSuchFileException;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileAttribute;
 import java.time.LocalDate;
-import java.util.AbstractList;
-import java.util.Set;
+import java.util.function.Supplier;
 
 import timber.log.Timber;
 
 public class MainActivity extends ComponentActivity {
-    private static final int OFFSET = 1;
-    private static final int REAL_ROW_COUNT = TermDateData.ROW_COUNT;
-    private static final int REAL_COLUMN_COUNT = TermDateData.COLUMN_COUNT + OFFSET;
-    @SuppressWarnings("unused")
-    private static final int REAL_CELL_COUNT = REAL_ROW_COUNT * REAL_COLUMN_COUNT;
     private static final int SYSTEM_BARS = WindowInsetsCompat.Type.systemBars();
     @NonNull
-    private static final String TIME_TABLE_DATA_FILE_NAME = "TermDate.bin";
-    @NonNull
     private static final String MIME_ALL = "*/*";
     @NonNull
     private static final String[] FILTER_MIME_ALL = {MIME_ALL};
     @NonNull
-    private static final InstanceFieldAccessor<TableMeasurer<Cell>> SmartTable_measurer
-            = InstanceFieldAccessor.of(SmartTable.class, "measurer");
-    @NonNull
-    private static final InstanceFieldAccessor<TableConfig> SmartTable_config
-            = InstanceFieldAccessor.of(SmartTable.class, "config");
-    @NonNull
-    private static final IntentFilter INTENT_FILTER = new IntentFilter(Intent.ACTION_TIME_CHANGED);
-    @NonNull
-    private static final LinkOption[] EMPTY_LINK_OPTIONS = new LinkOption[0];
-    @NonNull
-    private static final AccessMode[] ACCESS_READ = new AccessMode[]{AccessMode.READ};
-    @NonNull
-    private static final AccessMode[] ACCESS_WRITE = new AccessMode[]{AccessMode.WRITE};
-    @NonNull
-    private static final FileAttribute<?>[] EMPTY_FILE_ATTRIBUTES = new FileAttribute<?>[0];
+    private static final IntentFilter INTENT_FILTER = createIntentFilter();
     @NonNull
     private static final ActivityResultContracts.OpenDocument OPEN_DOCUMENT =
             new ActivityResultContracts.OpenDocument();
     @NonNull
     private static final ActivityResultContracts.CreateDocument CREATE_DOCUMENT =
             new ActivityResultContracts.CreateDocument(MIME_ALL);
-    @NonNull
-    private static final Set<StandardOpenOption> OPTIONS_READ =
-            new OneEnumSet<>(StandardOpenOption.READ);
-    @NonNull
-    private static final Set<StandardOpenOption> OPTIONS_CREATE_NEW =
-            new OneEnumSet<>(StandardOpenOption.CREATE_NEW);
-    @NonNull
-    private static final Set<StandardOpenOption> OPTIONS_WRITE_AND_CREATE =
-            new TwoEnumSet<>(StandardOpenOption.WRITE, StandardOpenOption.CREATE);
-    @NonNull
-    private static final ArrayView<CellRange> MERGED_CELL_RANGES_VIEW;
-    @NonNull
-    private static final ArrayTableData<Cell> TIME_TABLE_DATA;
-    private static final int TABLE_WIDTH_DELTA;
-    @NonNull
-    private static final String[] ROW_HEADER;
-    @NonNull
-    private static final String[] COLUMN_HEADER;
-    @NonNull
-    private static final String[] ROW_TOOLTIP;
-    @NonNull
-    private static final Path TIME_TABLE_DATA_PATH;
-    @NonNull
-    private static final TableConfig DEFAULT_TABLE_CONFIG;
-
-    static {
-        final var CELL_RANGE_COUNT = TermDateData.MAXIMUM_MERGED_ROWS * TermDateData.COLUMN_COUNT;
-
-        var ranges = new CellRange[CELL_RANGE_COUNT];
-        for (var i = 0; i < CELL_RANGE_COUNT; i++) {
-            ranges[i] = new CellRange(0, 0, 0, 0);
-        }
-        MERGED_CELL_RANGES_VIEW = new ArrayView<>(ranges, 0);
-    }
-
-    static {
-        Column<String> column = new Column<>("", "");
-        column.setDatas(new AbstractList<>() {
-            @Override
-            @NonNull
-            public String get(int index) {
-                TermDateData.validateRowIndex(index);
-                return ROW_HEADER[index];
-            }
-
-            @Override
-            public int size() {
-                return TermDateData.ROW_COUNT;
-            }
-        });
-        column.setFast(true);
-
-        var tableData = ArrayTableData.create(
-                (String) null, null,
-                TermDateData.TIME_TABLE_DATA,
-                null);
-        tableData.getColumns().add(0, column);
-        addColumn(tableData, column);
-        tableData.setXSequenceFormat(new BaseSequenceFormat() {
-            @Override
-            public String format(Integer integer) {
-                return COLUMN_HEADER[integer - 1];
-            }
-        });
-        tableData.setUserCellRange(MERGED_CELL_RANGES_VIEW);
-        TIME_TABLE_DATA = tableData;
-    }
-
-    static {
-        var context = GlobalContext.get();
-        var resources = context.getResources();
-        var dividerWidthPx = resources.getDimensionPixelSize(R.dimen.divider_width);
-        var config = new TableConfig();
-        var paddingPx = resources.getDimensionPixelSize(R.dimen.padding);
-        var lineStyle = new LineStyle(dividerWidthPx, context.getColor(R.color.divider_color));
-        // Title
-        config.setShowColumnTitle(false).setShowTableTitle(false).setShowXSequence(true).setShowYSequence(false)
-                // Fixed
-                .setFixedTitle(false).setFixedXSequence(true)
-                // Line style
-                .setContentGridStyle(lineStyle).setColumnTitleGridStyle(lineStyle).setSequenceGridStyle(lineStyle)
-                // Padding
-                .setHorizontalPadding(paddingPx).setVerticalPadding(paddingPx);
-
-        DEFAULT_TABLE_CONFIG = config;
-
-        if (BuildConfig.DEBUG) {
-            Timber.d("Divider width: %dpx", dividerWidthPx);
-            Timber.d("Padding: %dpx", paddingPx);
-        }
-        TABLE_WIDTH_DELTA = paddingPx +
-                (TermDateData.COLUMN_COUNT + 1) * (dividerWidthPx + 1) +
-                TermDateData.COLUMN_COUNT * paddingPx * 2;
-
-        ROW_HEADER = resources.getStringArray(R.array.row_header);
-        COLUMN_HEADER = resources.getStringArray(R.array.column_header);
-        ROW_TOOLTIP = resources.getStringArray(R.array.row_tooltip);
-
-        TIME_TABLE_DATA_PATH = FileSystems.getDefault()
-                .getPath(context.getFilesDir().getAbsolutePath(), TIME_TABLE_DATA_FILE_NAME);
-    }
-
-    static {
-        Contract.requireOperation(
-                new Value<>("rowHeaderLength", ROW_HEADER.length),
-                new Value<>("rowCount", REAL_ROW_COUNT),
-                Operator.EQ
-        );
-        Contract.requireOperation(
-                new Value<>("columnHeaderLength", COLUMN_HEADER.length),
-                new Value<>("columnCount", REAL_COLUMN_COUNT),
-                Operator.EQ
-        );
-        Contract.requireOperation(
-                new Value<>("rowToolTipLength", ROW_TOOLTIP.length),
-                new Value<>("rowCount", REAL_ROW_COUNT),
-                Operator.EQ
-        );
-        if (BuildConfig.DEBUG) {
 
-            Timber.d("Table data file: \"%s\"", TIME_TABLE_DATA_PATH);
-        }
-    }
+    // Table state handed from an activity destroyed for a configuration change to its replacement
+    @Nullable
+    private static TimetableView.RetainedState RETAINED_TABLE = null;
+    // Hash of the snapshot last queued for writing, so that committing the same data writes nothing
+    private static long SAVED_SNAPSHOT_HASH = TermDateData.NO_HASH;
 
     @NonNull
     private final ActivityResultLauncher<String[]> importTable =
@@ -243,96 +81,104 @@ public class MainActivity extends ComponentActivity {
             if (BuildConfig.DEBUG) {
                 Timber.d("System date changed, intent: %s", intent);
             }
-            refreshTimeAndWeeks();
+            refreshWeekClock();
         }
     };
-    private TableMeasurer<Cell> tableMeasurer;
-
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private static void addColumn(@NonNull ArrayTableData<Cell> tableData, @NonNull Column<String> column) {
-        tableData.getArrayColumns().add(0, (Column<Cell>) (Column) column);
-    }
-
-    private static boolean checkFileAccess(@NonNull Path path, boolean readOrWrite) {
-        try {
-            var provider = path.getFileSystem().provider();
-            if (!provider.readAttributes(path, BasicFileAttributes.class, EMPTY_LINK_OPTIONS).isDirectory()) {
-                provider.checkAccess(path, readOrWrite ? ACCESS_READ : ACCESS_WRITE);
-                return true;
-            }
-        } catch (IOException ignored) {
-        }
-        return false;
-    }
-
-    private static void handleIOException(@NonNull IOException e) {
-        ToastUtil.toast(R.string.open_time_table_file_failed);
+    @NonNull
+    private final Runnable rollover = () -> {
         if (BuildConfig.DEBUG) {
-            Timber.e(e, "Open termdate data file failed");
+            Timber.d("Midnight rollover");
         }
+        refreshWeekClock();
+    };
+    @NonNull
+    private final IOPipeline ioPipeline = IOPipeline.create();
+    // Filled by TermDateData.takeChanges
+    @NonNull
+    private final int[] changedRows = new int[TermDateData.MAX_COLUMN_COUNT];
+
+    @NonNull
+    private static IntentFilter createIntentFilter() {
+        var filter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        return filter;
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        var begin = StartupTrace.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         EdgeToEdge.enable(this);
+        var inflateBegin = StartupTrace.begin("Inflate");
         binding = DataBindingUtil.setContentView(this, R.layout.activity_main);
+        StartupTrace.end("Inflate", inflateBegin);
         ViewCompat.setOnApplyWindowInsetsListener(binding.activityMain, (v, insets) -> {
             Insets systemBars = insets.getInsets(SYSTEM_BARS);
             v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
             return insets;
         });
+        restoreTable();
         initializeTermDate();
         initializeBinding();
         openInternalTermDateFile();
+        StartupTrace.end("MainActivity.onCreate", begin);
+        if (BuildConfig.DEBUG) {
+            Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                    StartupTrace.mark("First frame"));
+        }
     }
 
-    @SuppressWarnings({"unchecked"})
-    private void remeasureTable() {
+    /**
+     * Save snapshot of data just decoded from a file, see {@link TermDateSnapshot}
+     */
+    private void saveSnapshot() {
+        var hash = TermDateData.hash();
+        // Snapshot data was restored from is already on disk
+        if (!TermDateData.isValid() || hash == TermDateData.NO_HASH || TermDateData.snapshot() != null ||
+                hash == SAVED_SNAPSHOT_HASH) {
+            return;
+        }
+        SAVED_SNAPSHOT_HASH = hash;
         if (BuildConfig.DEBUG) {
-            Timber.d("Remeasure table");
+            Timber.d("Save snapshot");
         }
-        var smartTable = getSmartTable();
-        smartTable.post(() -> {
-            var columns = TIME_TABLE_DATA.getColumns();
-            var tableWidth = smartTable.getWidth();
-            var config = smartTable.getConfig();
-            if (BuildConfig.DEBUG) {
-                Timber.d("Table width: %dpx", tableWidth);
-            }
-            var firstColumnWidth = columns.get(0).getComputeWidth();
-            if (BuildConfig.DEBUG) {
-                Timber.d("First column width: %dpx", firstColumnWidth);
-            }
-            var restWidth = tableWidth - firstColumnWidth - TABLE_WIDTH_DELTA;
-            if (BuildConfig.DEBUG) {
-                Timber.d("Rest width: %dpx", restWidth);
-            }
-            var format = new MultiLineDrawFormat<>(restWidth / TermDateData.COLUMN_COUNT);
-            for (var i = 0; i < TermDateData.COLUMN_COUNT; i++) {
-                columns.get(i + OFFSET).setDrawFormat(format);
-            }
-            config.setMinTableWidth(tableWidth);
-            remeasure();
-        });
+        // Termdate data is never modified after being published, encode it on I/O thread
+        var termDate = TermDateData.get();
+        ioPipeline.execute(() -> TermDateFiles.TIME_TABLE_SNAPSHOT_FILE.write(
+                TermDateSnapshot.create(hash, termDate).encode()));
     }
 
     private void initializeBinding() {
         if (BuildConfig.DEBUG) {
             Timber.d("Initialize binding");
         }
-        var smartTable = getSmartTable();
         binding.buttonImport.setOnClickListener(v -> importTable.launch(FILTER_MIME_ALL));
         binding.buttonExport.setOnClickListener(v -> {
-            if (TermDateData.isValid() || checkFileAccess(TIME_TABLE_DATA_PATH, true)) {
-                exportTable.launch(TIME_TABLE_DATA_FILE_NAME);
+            if (TermDateData.isValid() ||
+                    TermDateFiles.checkFileAccess(TermDateFiles.TIME_TABLE_DATA_PATH, true)) {
+                exportTable.launch(TermDateFiles.TIME_TABLE_DATA_FILE_NAME);
             } else {
                 promptAndOpenTermDateFile();
             }
         });
-        tableMeasurer = Contract.requireNonNull(SmartTable_measurer.get(smartTable));
-        smartTable.setTableData(TIME_TABLE_DATA);
         registerBroadcastReceiver();
+        scheduleRollover();
+    }
+
+    private void scheduleRollover() {
+        var view = binding.activityMain;
+        view.removeCallbacks(rollover);
+        view.postDelayed(rollover, WeekClock.millisUntilRollover());
+    }
+
+    private void refreshWeekClock() {
+        WeekClock.refresh(TermDateData.beginDate());
+        refreshTimeAndWeeks();
+        if (TermDateData.refreshActiveView()) {
+            updateTimetable();
+        }
+        scheduleRollover();
     }
 
     @SuppressLint("UnspecifiedRegisterReceiverFlag")
@@ -347,10 +193,34 @@ public class MainActivity extends ComponentActivity {
         }
     }
 
+    private void restoreTable() {
+        var retained = RETAINED_TABLE;
+        RETAINED_TABLE = null;
+        if (retained != null) {
+            if (BuildConfig.DEBUG) {
+                Timber.d("Restore retained table");
+            }
+            getTimetable().restoreState(retained);
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Rollover is posted on uptime, which stops in deep sleep, so the date may have changed
+        refreshWeekClock();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // Termdate data is static, only text layouts would be lost
+        if (isChangingConfigurations()) {
+            RETAINED_TABLE = getTimetable().retainState();
+        }
+        binding.activityMain.removeCallbacks(rollover);
         unregisterReceiver(receiver);
+        ioPipeline.shutdown();
     }
 
     private void tryOpenExternalTableFile() {
@@ -368,38 +238,34 @@ public class MainActivity extends ComponentActivity {
 
     private void openTermDateFile(@NonNull TermDateFileHandler handler) {
         Contract.requireNonNull(handler);
+        openTermDateFile(handler, () -> TermDateFiles.load(handler));
+    }
+
+    /**
+     * @param handler Handler of the file
+     * @param load    Task loading the file on I/O thread, see {@link TermDateFiles#load}
+     */
+    private void openTermDateFile(@NonNull TermDateFileHandler handler, @NonNull Supplier<Integer> load) {
+        Contract.requireNonNull(handler);
+        Contract.requireNonNull(load);
         if (BuildConfig.DEBUG) {
             Timber.d("Open termdate file");
         }
-        try {
-            try (var inputStream = handler.openInputStream()) {
-                if (inputStream == null) {
-                    ToastUtil.toast(R.string.time_table_file_not_found);
-                    handler.fileNotFound();
-                    return;
-                }
-                switch (TermDateData.deserialize(inputStream)) {
-                    case DeserializeResult.OK -> {
-                        if (handler.reallySucceeded()) {
-                            ToastUtil.toast(R.string.open_time_table_file_succeeded);
-                            openTermDateSucceed();
-                            return;
-                        } else {
-                            TermDateData.clear();
-                        }
-                    }
-                    case DeserializeResult.INVALID_FILE -> {
-                        ToastUtil.toast(R.string.time_table_file_corrupted);
-                        if (BuildConfig.DEBUG) {
-                            Timber.w("Open termdate failed.");
-                        }
-                    }
+        ioPipeline.submit(load, result -> {
+            switch (result) {
+                case TermDateFiles.OpenResult.SUCCEEDED -> {
+                    TermDateData.commit();
+                    handler.succeeded();
+                    saveSnapshot();
+                    ToastUtil.toast(R.string.open_time_table_file_succeeded);
+                    openTermDateSucceed();
                 }
+                case TermDateFiles.OpenResult.FILE_NOT_FOUND -> handler.fileNotFound();
+                case TermDateFiles.OpenResult.FAILED -> handler.failed();
+                case TermDateFiles.OpenResult.UNCHANGED ->
+                        ToastUtil.toast(R.string.time_table_file_unchanged);
             }
-        } catch (IOException e) {
-            handleIOException(e);
-        }
-        handler.failed();
+        });
     }
 
     private void openInternalTermDateFile() {
@@ -409,36 +275,7 @@ public class MainActivity extends ComponentActivity {
             }
             return;
         }
-        openTermDateFile(new TermDateFileHandler() {
-            private static void internalTermDateFileNotFound() {
-                if (BuildConfig.DEBUG) {
-                    Timber.e("Internal time table file not found");
-                }
-            }
-
-            @Nullable
-            @Override
-            public InputStream openInputStream() throws IOException {
-                try {
-                    var path = TIME_TABLE_DATA_PATH;
-                    if (checkFileAccess(path, true)) {
-                        return Channels.newInputStream(Files.newByteChannel(
-                                path, OPTIONS_READ, EMPTY_FILE_ATTRIBUTES));
-                    } else {
-                        internalTermDateFileNotFound();
-                    }
-                } catch (NoSuchFileException | DirectoryNotEmptyException e) {
-                    internalTermDateFileNotFound();
-                }
-                return null;
-            }
-
-            @Override
-            public boolean reallySucceeded() {
-                remeasureTable();
-                return true;
-            }
-
+        var handler = new TermDateFiles.InternalFileHandler() {
             @Override
             public void fileNotFound() {
                 tryOpenExternalTableFile();
@@ -446,98 +283,77 @@ public class MainActivity extends ComponentActivity {
 
             @Override
             public void failed() {
-                try {
-                    if (BuildConfig.DEBUG) {
-                        Timber.w("Try to delete termdate data file");
-                    }
-                    Files.delete(TIME_TABLE_DATA_PATH);
-                } catch (NoSuchFileException | DirectoryNotEmptyException e) {
-                    ToastUtil.toast(R.string.delete_time_table_file_failed);
-                    if (BuildConfig.DEBUG) {
-                        Timber.e(e, "Delete termdate data file failed");
-                    }
-                } catch (IOException e) {
-                    handleIOException(e);
-                }
                 tryOpenExternalTableFile();
             }
-        });
+        };
+        var prefetched = Prefetch.takeInternalFile();
+        if (prefetched != null) {
+            // Queued on I/O thread after the prefetch, so it is already done when this runs
+            openTermDateFile(handler, () -> Prefetch.join(prefetched));
+        } else {
+            openTermDateFile(handler);
+        }
     }
 
     private void initializeTermDate() {
         if (BuildConfig.DEBUG) {
             Timber.d("Initialize termdate");
         }
-        TIME_TABLE_DATA.setOnItemClickListener((column, value, o, col, row) -> {
-            if (col < OFFSET) {
-                ToastUtil.toast(ROW_TOOLTIP[row]);
+        var timetable = getTimetable();
+        timetable.setHeaders(TableBootstrap.columnHeader(), TableBootstrap.rowHeader());
+        timetable.setMergedCells(mergedCells());
+        timetable.setCells(TermDateData.activeView(), TermDateData.inactiveView());
+        // Everything is laid out anyway
+        TermDateData.takeChanges(changedRows);
+        timetable.setOnCellClickListener((column, row) -> {
+            if (column < TableBootstrap.OFFSET) {
+                ToastUtil.toast(TableBootstrap.rowTooltip(row));
             } else {
                 if (TermDateData.isValid()) {
-                    Cell cell = TermDateData.TIME_TABLE_DATA[col - OFFSET][row];
-                    ToastUtil.toast(GlobalContext.get().getString(
-                            R.string.class_info, cell.getOdd(), cell.getEven()));
+                    var realColumn = column - TableBootstrap.OFFSET;
+                    ToastUtil.toast(GlobalContext.get().getString(R.string.class_info,
+                            TermDateData.getOdd(realColumn, row), TermDateData.getEven(realColumn, row)));
                 } else {
                     promptAndOpenTermDateFile();
                 }
             }
         });
-        var tableMain = getSmartTable();
-        var config = DEFAULT_TABLE_CONFIG;
-        if (BuildConfig.DEBUG) {
-            Timber.d("Setting termdate config");
-        }
-        var fontStyle = new FontStyle((int) getResources().
-                getDimension(R.dimen.font_size), binding.textViewBeginTime.getCurrentTextColor());
-        // Font style
-        config.setContentStyle(fontStyle)
-                .setColumnTitleStyle(fontStyle)
-                .setXSequenceStyle(fontStyle)
-                .setPaint(tableMain.getConfig().getPaint());
-        SmartTable_config.set(tableMain, config);
     }
 
-    private void remeasure() {
-        var smartTable = getSmartTable();
-        tableMeasurer.measure(smartTable.getTableData(), smartTable.getConfig());
-        smartTable.invalidate();
-    }
-
-    @SuppressWarnings("unchecked")
-    private SmartTable<Cell> getSmartTable() {
+    @NonNull
+    private TimetableView getTimetable() {
         return binding.tableMain;
     }
 
     private void openTermDateSucceed() {
-        var view = MERGED_CELL_RANGES_VIEW;
-        var tableData = TIME_TABLE_DATA;
-        int length = 0;
-        var ranges = view.getArray();
-        for (var column = 0; column < TermDateData.COLUMN_COUNT; column++) {
-            var mergeStates = new MergeStates(TermDateData.MERGE_STATES[column]);
-            for (var index = 0; index < mergeStates.getCount(); index++) {
-                var realColumn = column + OFFSET;
-                var range = ranges[length++];
-                var mergedRow = mergeStates.get(index);
-                range.setFirstRow(MergeStates.getFirstRow(mergedRow));
-                range.setLastRow(MergeStates.getLastRow(mergedRow));
-                range.setFirstCol(realColumn);
-                range.setLastCol(realColumn);
-            }
-        }
-        view.setLength(length);
-        // Reset user cell ranges
-        tableData.getTableInfo().setColumnSize(REAL_COLUMN_COUNT);
-        tableData.clearCellRangeAddresses();
-        remeasure();
+        updateTimetable();
         refreshTimeAndWeeks();
     }
 
+    /**
+     * Show changes of termdate data, only changed cells are laid out again
+     */
+    private void updateTimetable() {
+        var changedRows = this.changedRows;
+        var changedMergeStates = TermDateData.takeChanges(changedRows);
+        getTimetable().updateCells(TermDateData.activeView(), TermDateData.inactiveView(), changedRows,
+                changedMergeStates != 0 ? mergedCells() : null);
+    }
+
+    @NonNull
+    private static int[] mergedCells() {
+        // Snapshot has merge states expanded already
+        var snapshot = TermDateData.snapshot();
+        return snapshot != null ?
+                snapshot.getMergedCells() : TermDateSnapshot.expandMergeStates(TermDateData.get());
+    }
+
     private void refreshTimeAndWeeks() {
         String text;
         if (TermDateData.isValid()) {
-            var now = DateUtil.now();
+            var now = WeekClock.today();
             var beginDate = TermDateData.beginDate();
-            var weeks = DateUtil.weekCount(beginDate, now);
+            var weeks = WeekClock.weeks();
             if (BuildConfig.DEBUG) {
                 Timber.d("Now: %s, Begin date: %s, Weeks: %d",
                         LocalDate.ofEpochDay(now), LocalDate.ofEpochDay(beginDate), weeks);
@@ -564,65 +380,80 @@ public class MainActivity extends ComponentActivity {
             Timber.d("Term date file location: \"%s\"", result);
         }
         openTermDateFile(new TermDateFileHandler() {
-            private CopyingInputStream stream;
+            // Whole document, parsed and persisted from the same bytes
+            @Nullable
+            private ByteArrayAppender data;
 
             @Nullable
             @Override
-            public InputStream openInputStream() {
-                try {
-                    var inputStream = getContentResolver().openInputStream(result);
+            public ByteBuffer loadByteBuffer() throws IOException {
+                try (var inputStream = getContentResolver().openInputStream(result)) {
                     if (inputStream == null) {
                         if (BuildConfig.DEBUG) {
                             Timber.e("openInputStream on uri %s returns null", result);
                         }
-                    } else {
-                        var stream = new CopyingInputStream(
-                                inputStream, TermDateData.ESTIMATED_FILE_SIZE);
-                        this.stream = stream;
-                        return stream;
+                        return null;
                     }
+                    var data = new ByteArrayAppender(estimateFileSize(inputStream));
+                    data.readFrom(inputStream, TermDateData.READ_LIMIT);
+                    if (BuildConfig.DEBUG) {
+                        Timber.d("File size: %d", data.size());
+                    }
+                    this.data = data;
+                    return ByteBuffer.wrap(data.buffer(), 0, data.size());
                 } catch (FileNotFoundException e) {
                     if (BuildConfig.DEBUG) {
                         Timber.d(e, "Open external termdate data file not found");
                     }
                 }
-                remeasureTable();
                 return null;
             }
 
+            // Documents are only read by loadByteBuffer, reaching here means it cannot be opened
+            @Nullable
             @Override
-            public boolean reallySucceeded() {
-                boolean result;
-                try (var outputChannel = Files.newByteChannel(
-                        TIME_TABLE_DATA_PATH, OPTIONS_WRITE_AND_CREATE, EMPTY_FILE_ATTRIBUTES)) {
-                    if (BuildConfig.DEBUG) {
-                        Timber.d("File size: %d", stream.size());
-                    }
-                    outputChannel.write(ByteBuffer.wrap(stream.buffer(), 0, stream.size()));
-                    result = true;
-                } catch (IOException e) {
-                    if (BuildConfig.DEBUG) {
-                        Timber.d(e, "Write internal termdate data file failed");
-                    }
-                    ToastUtil.toast(R.string.save_time_table_file_to_internal_storage_failed);
-                    result = false;
-                }
-                remeasureTable();
-                return result;
+            public InputStream openInputStream() {
+                return null;
+            }
+
+            @Override
+            public void succeeded() {
+                // Persisting never blocks the import, failures are reported by TIME_TABLE_DATA_FILE
+                TermDateFiles.TIME_TABLE_DATA_FILE.write(Contract.requireNonNull(data));
             }
 
+            // Table keeps showing current data
             @Override
             public void fileNotFound() {
-                remeasureTable();
             }
 
             @Override
             public void failed() {
-                remeasureTable();
             }
         });
     }
 
+    /**
+     * Get capacity to read the whole stream into, exact for streams backed by regular files
+     */
+    @WorkerThread
+    private static int estimateFileSize(@NonNull InputStream inputStream) {
+        if (inputStream instanceof FileInputStream fileInputStream) {
+            try {
+                var size = fileInputStream.getChannel().size();
+                // Pipes and sockets report 0
+                if (size > 0) {
+                    return (int) Math.min(size, TermDateData.READ_LIMIT);
+                }
+            } catch (IOException e) {
+                if (BuildConfig.DEBUG) {
+                    Timber.d(e, "Get file size failed");
+                }
+            }
+        }
+        return TermDateData.ESTIMATED_FILE_SIZE;
+    }
+
     private void saveExternalTermDate(@Nullable Uri result) {
         if (result == null) {
             ToastUtil.toast(R.string.request_cancelled);
@@ -631,12 +462,22 @@ public class MainActivity extends ComponentActivity {
             }
             return;
         }
+        if (BuildConfig.DEBUG) {
+            Timber.d("Save termdate file, location: %s", result);
+        }
+        // Serialize on main thread, so that I/O thread never reads data being committed
+        var serialized = TermDateData.serialize();
+        var contentResolver = getContentResolver();
+        // Loads submitted later must not cancel the export
+        ioPipeline.execute(() -> writeTermDateFile(contentResolver, result, serialized));
+    }
+
+    @WorkerThread
+    private static void writeTermDateFile(@NonNull ContentResolver contentResolver,
+                                          @NonNull Uri result, @NonNull ByteArrayAppender serialized) {
         try {
-            if (BuildConfig.DEBUG) {
-                Timber.d("Save termdate file, location: %s", result);
-            }
-            var path = TIME_TABLE_DATA_PATH;
-            try (var outputStream = getContentResolver().openOutputStream(result)) {
+            var path = TermDateFiles.TIME_TABLE_DATA_PATH;
+            try (var outputStream = contentResolver.openOutputStream(result)) {
                 if (outputStream == null) {
                     ToastUtil.toast(R.string.save_time_table_file_failed);
                     if (BuildConfig.DEBUG) {
@@ -644,19 +485,12 @@ public class MainActivity extends ComponentActivity {
                     }
                     return;
                 }
-                try {
-                    var serialized = TermDateData.serialize();
-                    if (!checkFileAccess(path, false)) {
-                        try (SeekableByteChannel outputChannel = Files.newByteChannel(
-                                path, OPTIONS_CREATE_NEW, EMPTY_FILE_ATTRIBUTES)) {
-                            outputChannel.write(ByteBuffer.wrap(serialized.buffer(), 0, serialized.size()));
-                        }
-                    }
-                    outputStream.write(serialized.buffer(), 0, serialized.size());
-                    ToastUtil.toast(R.string.save_time_table_file_succeeded);
-                } catch (IOException e) {
-                    ToastUtil.toast(R.string.save_time_table_file_to_internal_storage_failed);
+                if (!TermDateFiles.checkFileAccess(path, false)) {
+                    // Failures are reported by TermDateFiles.TIME_TABLE_DATA_FILE
+                    TermDateFiles.TIME_TABLE_DATA_FILE.write(serialized);
                 }
+                outputStream.write(serialized.buffer(), 0, serialized.size());
+                ToastUtil.toast(R.string.save_time_table_file_succeeded);
             }
         } catch (IOException e) {
             ToastUtil.toast(R.string.save_time_table_file_failed);
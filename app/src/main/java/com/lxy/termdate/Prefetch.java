@@ -0,0 +1,117 @@
+package com.lxy.termdate;
+
+import android.content.Context;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.util.IOPipeline;
+import com.lxy.termdate.util.StartupTrace;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Work started as soon as the process starts, so that it overlaps with activity creation instead
+ * of following it. Runs on the shared I/O thread, tasks submitted there later are queued behind
+ * it and never see it half done
+ */
+public class Prefetch {
+    private static final int ROW_HEADER = 0;
+    private static final int COLUMN_HEADER = 1;
+    private static final int ROW_TOOLTIP = 2;
+
+    @Nullable
+    private static Future<String[][]> HEADERS = null;
+    // Taken by the first activity, later activities load the internal termdate file themselves
+    @Nullable
+    private static Future<Integer> INTERNAL_FILE = null;
+
+    /**
+     * Start resolving table headers, loading the internal termdate file and building
+     * {@link TableBootstrap}
+     *
+     * @param context Application context
+     */
+    @MainThread
+    static void start(@NonNull Context context) {
+        Contract.requireNonNull(context);
+        if (BuildConfig.DEBUG) {
+            Contract.require(HEADERS == null, "Prefetch already started");
+        }
+        var resources = context.getResources();
+        var executor = IOPipeline.ioExecutor();
+        HEADERS = executor.submit(() -> {
+            var begin = StartupTrace.begin("Prefetch headers");
+            var headers = new String[][]{
+                    resources.getStringArray(R.array.row_header),
+                    resources.getStringArray(R.array.column_header),
+                    resources.getStringArray(R.array.row_tooltip)
+            };
+            StartupTrace.end("Prefetch headers", begin);
+            return headers;
+        });
+        // Deserialized data is only staged, the activity commits it on main thread
+        INTERNAL_FILE = executor.submit(() -> {
+            var begin = StartupTrace.begin("Prefetch internal file");
+            var result = TermDateFiles.load(new TermDateFiles.InternalFileHandler());
+            StartupTrace.end("Prefetch internal file", begin);
+            return result;
+        });
+        // Least urgent, the activity builds whatever it needs before this runs
+        executor.execute(TableBootstrap::prepare);
+    }
+
+    @NonNull
+    static String[] rowHeader() {
+        return headers()[ROW_HEADER];
+    }
+
+    @NonNull
+    static String[] columnHeader() {
+        return headers()[COLUMN_HEADER];
+    }
+
+    @NonNull
+    static String[] rowTooltip() {
+        return headers()[ROW_TOOLTIP];
+    }
+
+    @NonNull
+    private static String[][] headers() {
+        return join(Contract.requireNonNull(HEADERS));
+    }
+
+    /**
+     * Take result of loading the internal termdate file, only the first caller gets it
+     *
+     * @return Future of {@link TermDateFiles.OpenResult}, or null if already taken
+     */
+    @MainThread
+    @Nullable
+    static Future<Integer> takeInternalFile() {
+        var internalFile = INTERNAL_FILE;
+        INTERNAL_FILE = null;
+        return internalFile;
+    }
+
+    /**
+     * Wait for prefetched result, rethrowing its failure as if it ran on current thread
+     */
+    @NonNull
+    static <T> T join(@NonNull Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            return Contract.fail("Prefetch failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Contract.fail("Interrupted while waiting for prefetch", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.lxy.termdate;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.contract.Operator;
+import com.lxy.termdate.data.TermDateData;
+import com.lxy.termdate.util.StartupTrace;
+
+/**
+ * Headers shared by every table, built by a holder class on first use instead of while
+ * {@link MainActivity} is being loaded. {@link #prepare()} builds them ahead of time off the main
+ * thread. Geometry and text layouts belong to {@link com.lxy.termdate.widget.TimetableView}
+ */
+public class TableBootstrap {
+    static final int OFFSET = 1;
+    // Headers cover the largest layout, tables show as many as their data has
+    static final int REAL_ROW_COUNT = TermDateData.MAX_ROW_COUNT;
+    static final int REAL_COLUMN_COUNT = TermDateData.MAX_COLUMN_COUNT + OFFSET;
+    @SuppressWarnings("unused")
+    static final int REAL_CELL_COUNT = REAL_ROW_COUNT * REAL_COLUMN_COUNT;
+
+    private static class Headers {
+        @NonNull
+        static final String[] ROW_HEADER;
+        @NonNull
+        static final String[] COLUMN_HEADER;
+        @NonNull
+        static final String[] ROW_TOOLTIP;
+
+        static {
+            var begin = StartupTrace.begin("Headers");
+            // Resolved on I/O thread while the process was starting, see Prefetch
+            ROW_HEADER = Prefetch.rowHeader();
+            COLUMN_HEADER = Prefetch.columnHeader();
+            ROW_TOOLTIP = Prefetch.rowTooltip();
+            Contract.requireOperation(
+                    "rowHeaderLength", ROW_HEADER.length,
+                    "rowCount", REAL_ROW_COUNT,
+                    Operator.EQ
+            );
+            Contract.requireOperation(
+                    "columnHeaderLength", COLUMN_HEADER.length,
+                    "columnCount", REAL_COLUMN_COUNT,
+                    Operator.EQ
+            );
+            Contract.requireOperation(
+                    "rowToolTipLength", ROW_TOOLTIP.length,
+                    "rowCount", REAL_ROW_COUNT,
+                    Operator.EQ
+            );
+            StartupTrace.end("Headers", begin);
+        }
+    }
+
+    /**
+     * Build headers ahead of time. The main thread blocks on a holder being built here only until
+     * it is done, and never builds it twice
+     */
+    @WorkerThread
+    static void prepare() {
+        var begin = StartupTrace.begin("TableBootstrap");
+        // Reading a field of a holder builds it
+        Contract.requireNonNull(Headers.ROW_TOOLTIP);
+        StartupTrace.end("TableBootstrap", begin);
+    }
+
+    @NonNull
+    static String[] rowHeader() {
+        return Headers.ROW_HEADER;
+    }
+
+    @NonNull
+    static String[] columnHeader() {
+        return Headers.COLUMN_HEADER;
+    }
+
+    @NonNull
+    static String rowTooltip(int row) {
+        TermDateData.validateRowIndex(row);
+        return Headers.ROW_TOOLTIP[row];
+    }
+}
@@ -0,0 +1,267 @@
+package com.lxy.termdate;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.lxy.termdate.data.DeserializeResult;
+import com.lxy.termdate.data.TermDateData;
+import com.lxy.termdate.data.TermDateSnapshot;
+import com.lxy.termdate.enumset.OneEnumSet;
+import com.lxy.termdate.util.TermDateFileHandler;
+import com.lxy.termdate.util.ToastUtil;
+import com.lxy.termdate.util.WriteBehindFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Internal termdate file and its snapshot, and loading termdate files on I/O thread. Shared by
+ * {@link MainActivity} and {@link Prefetch}
+ */
+public class TermDateFiles {
+    @IntDef({OpenResult.SUCCEEDED, OpenResult.FILE_NOT_FOUND, OpenResult.FAILED, OpenResult.UNCHANGED})
+    @interface OpenResult {
+        int SUCCEEDED = 0;
+        int FILE_NOT_FOUND = 1;
+        int FAILED = 2;
+        int UNCHANGED = 3;
+    }
+
+    @NonNull
+    static final String TIME_TABLE_DATA_FILE_NAME = "TermDate.bin";
+    @NonNull
+    private static final String TIME_TABLE_DATA_TEMP_FILE_NAME = TIME_TABLE_DATA_FILE_NAME + ".tmp";
+    @NonNull
+    private static final String TIME_TABLE_SNAPSHOT_FILE_NAME = "TermDate.snapshot";
+    @NonNull
+    private static final String TIME_TABLE_SNAPSHOT_TEMP_FILE_NAME = TIME_TABLE_SNAPSHOT_FILE_NAME + ".tmp";
+    @NonNull
+    private static final LinkOption[] EMPTY_LINK_OPTIONS = new LinkOption[0];
+    @NonNull
+    private static final AccessMode[] ACCESS_READ = new AccessMode[]{AccessMode.READ};
+    @NonNull
+    private static final AccessMode[] ACCESS_WRITE = new AccessMode[]{AccessMode.WRITE};
+    @NonNull
+    private static final FileAttribute<?>[] EMPTY_FILE_ATTRIBUTES = new FileAttribute<?>[0];
+    @NonNull
+    private static final Set<StandardOpenOption> OPTIONS_READ =
+            new OneEnumSet<>(StandardOpenOption.READ);
+
+    @NonNull
+    static final Path TIME_TABLE_DATA_PATH;
+    // Internal termdate file outlives activities, so that pending writes are not lost on recreation
+    @NonNull
+    static final WriteBehindFile TIME_TABLE_DATA_FILE;
+    @NonNull
+    private static final Path TIME_TABLE_SNAPSHOT_PATH;
+    // Snapshot is only a cache, failures to write it are not reported
+    @NonNull
+    static final WriteBehindFile TIME_TABLE_SNAPSHOT_FILE;
+
+    static {
+        var filesDir = GlobalContext.get().getFilesDir().getAbsolutePath();
+        TIME_TABLE_DATA_PATH = FileSystems.getDefault().getPath(filesDir, TIME_TABLE_DATA_FILE_NAME);
+        TIME_TABLE_DATA_FILE = WriteBehindFile.create(TIME_TABLE_DATA_PATH,
+                FileSystems.getDefault().getPath(filesDir, TIME_TABLE_DATA_TEMP_FILE_NAME),
+                TermDateData::markPersisted,
+                e -> ToastUtil.toast(R.string.save_time_table_file_to_internal_storage_failed));
+        TIME_TABLE_SNAPSHOT_PATH = FileSystems.getDefault().getPath(filesDir, TIME_TABLE_SNAPSHOT_FILE_NAME);
+        TIME_TABLE_SNAPSHOT_FILE = WriteBehindFile.create(TIME_TABLE_SNAPSHOT_PATH,
+                FileSystems.getDefault().getPath(filesDir, TIME_TABLE_SNAPSHOT_TEMP_FILE_NAME),
+                data -> {
+                }, e -> {
+                });
+        if (BuildConfig.DEBUG) {
+            Timber.d("Table data file: \"%s\"", TIME_TABLE_DATA_PATH);
+        }
+    }
+
+    static boolean checkFileAccess(@NonNull Path path, boolean readOrWrite) {
+        try {
+            var provider = path.getFileSystem().provider();
+            if (!provider.readAttributes(path, BasicFileAttributes.class, EMPTY_LINK_OPTIONS).isDirectory()) {
+                provider.checkAccess(path, readOrWrite ? ACCESS_READ : ACCESS_WRITE);
+                return true;
+            }
+        } catch (IOException ignored) {
+        }
+        return false;
+    }
+
+    private static void handleIOException(@NonNull IOException e) {
+        ToastUtil.toast(R.string.open_time_table_file_failed);
+        if (BuildConfig.DEBUG) {
+            Timber.e(e, "Open termdate data file failed");
+        }
+    }
+
+    /**
+     * Load and deserialize termdate file without committing it, see {@link TermDateData#commit()}.
+     * Must be called on the shared I/O thread, see {@link com.lxy.termdate.util.IOPipeline}
+     *
+     * @param handler Handler of the file
+     * @return Open result
+     */
+    @WorkerThread
+    static @OpenResult int load(@NonNull TermDateFileHandler handler) {
+        try {
+            @DeserializeResult int result;
+            var buffer = handler.loadByteBuffer();
+            if (buffer != null) {
+                result = TermDateData.deserialize(buffer, handler.isTrusted(), handler.loadSnapshot());
+            } else {
+                try (var inputStream = handler.openInputStream()) {
+                    if (inputStream == null) {
+                        ToastUtil.toast(R.string.time_table_file_not_found);
+                        return OpenResult.FILE_NOT_FOUND;
+                    }
+                    result = TermDateData.deserialize(inputStream, handler.isTrusted());
+                }
+            }
+            // Results of a cancelled load are dropped, so success is reported once committed
+            switch (result) {
+                case DeserializeResult.OK -> {
+                    return OpenResult.SUCCEEDED;
+                }
+                case DeserializeResult.UNCHANGED -> {
+                    // Already shown and persisted, skip persisting and remeasuring
+                    return OpenResult.UNCHANGED;
+                }
+                case DeserializeResult.INVALID_FILE -> {
+                    ToastUtil.toast(R.string.time_table_file_corrupted);
+                    if (BuildConfig.DEBUG) {
+                        Timber.w("Open termdate failed.");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            handleIOException(e);
+        }
+        handler.cleanUp();
+        return OpenResult.FAILED;
+    }
+
+    /**
+     * Handler of the internal termdate file, main thread callbacks do nothing unless overridden
+     */
+    static class InternalFileHandler implements TermDateFileHandler {
+        private static void internalTermDateFileNotFound() {
+            if (BuildConfig.DEBUG) {
+                Timber.e("Internal time table file not found");
+            }
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer loadByteBuffer() throws IOException {
+            try {
+                var path = TIME_TABLE_DATA_PATH;
+                if (checkFileAccess(path, true)) {
+                    try (var channel = FileChannel.open(path, OPTIONS_READ, EMPTY_FILE_ATTRIBUTES)) {
+                        var size = Math.min(channel.size(), TermDateData.READ_LIMIT);
+                        if (BuildConfig.DEBUG) {
+                            Timber.d("Map internal termdate file, size: %d", size);
+                        }
+                        // Mapping stays valid after channel is closed
+                        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    }
+                }
+            } catch (NoSuchFileException | DirectoryNotEmptyException e) {
+                internalTermDateFileNotFound();
+            }
+            // Let openInputStream report missing file
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public TermDateSnapshot loadSnapshot() {
+            try (var channel = FileChannel.open(
+                    TIME_TABLE_SNAPSHOT_PATH, OPTIONS_READ, EMPTY_FILE_ATTRIBUTES)) {
+                return TermDateSnapshot.decode(
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (IOException | RuntimeException e) {
+                // Snapshot is only a cache, whatever is wrong with it the file is decoded instead
+                if (BuildConfig.DEBUG) {
+                    Timber.d(e, "Snapshot not available");
+                }
+                return null;
+            }
+        }
+
+        @Nullable
+        @Override
+        public InputStream openInputStream() throws IOException {
+            try {
+                var path = TIME_TABLE_DATA_PATH;
+                if (checkFileAccess(path, true)) {
+                    return Channels.newInputStream(Files.newByteChannel(
+                            path, OPTIONS_READ, EMPTY_FILE_ATTRIBUTES));
+                } else {
+                    internalTermDateFileNotFound();
+                }
+            } catch (NoSuchFileException | DirectoryNotEmptyException e) {
+                internalTermDateFileNotFound();
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isTrusted() {
+            return true;
+        }
+
+        // Loaded bytes are what the internal file holds
+        @MainThread
+        @Override
+        public void succeeded() {
+            TermDateData.markPersisted();
+        }
+
+        @Override
+        public void cleanUp() {
+            try {
+                if (BuildConfig.DEBUG) {
+                    Timber.w("Try to delete termdate data file");
+                }
+                Files.delete(TIME_TABLE_DATA_PATH);
+            } catch (NoSuchFileException | DirectoryNotEmptyException e) {
+                ToastUtil.toast(R.string.delete_time_table_file_failed);
+                if (BuildConfig.DEBUG) {
+                    Timber.e(e, "Delete termdate data file failed");
+                }
+            } catch (IOException e) {
+                handleIOException(e);
+            }
+        }
+
+        @MainThread
+        @Override
+        public void fileNotFound() {
+        }
+
+        @MainThread
+        @Override
+        public void failed() {
+        }
+    }
+}
@@ -21,6 +21,22 @@ public class Contract {
         }
     }
 
+    @NonNull
+    private static String valueToString(@Nullable String name, long value) {
+        // Same format as Value.toString, only called when the contract fails
+        if (name == null) {
+            return Long.toString(value);
+        }
+        return name + "(" + value + ")";
+    }
+
+    private static void requireOperationInternal(
+            @Nullable String leftName, long left, @Nullable String rightName, long right, @NonNull Operator op) {
+        if (!op.test(left, right)) {
+            Contract.fail(valueToString(leftName, left) + op.getNegatedOpName() + valueToString(rightName, right));
+        }
+    }
+
     public static <T extends Comparable<T>> void requireOperation(
             @NonNull Value<T> left, @NonNull Value<T> right, @NonNull Operator op) {
         if (BuildConfig.DEBUG) {
@@ -28,6 +44,30 @@ public class Contract {
         }
     }
 
+    // Primitive overloads neither box nor allocate Value, prefer them in hot paths
+
+    public static void requireOperation(
+            @Nullable String leftName, int left, @Nullable String rightName, int right, @NonNull Operator op) {
+        if (BuildConfig.DEBUG) {
+            requireOperationInternal(leftName, left, rightName, right, op);
+        }
+    }
+
+    public static void requireOperation(@Nullable String leftName, int left, int right, @NonNull Operator op) {
+        requireOperation(leftName, left, null, right, op);
+    }
+
+    public static void requireOperation(
+            @Nullable String leftName, long left, @Nullable String rightName, long right, @NonNull Operator op) {
+        if (BuildConfig.DEBUG) {
+            requireOperationInternal(leftName, left, rightName, right, op);
+        }
+    }
+
+    public static void requireOperation(@Nullable String leftName, long left, long right, @NonNull Operator op) {
+        requireOperation(leftName, left, null, right, op);
+    }
+
     private static <T> T failInternal(@NonNull String message, @Nullable Throwable cause) {
         if (BuildConfig.DEBUG) {
             Timber.wtf(cause, message, EMPTY_ARGS);
@@ -102,25 +142,19 @@ public class Contract {
         requireValidFromToIndex(fromIndex, fromIndex + size, length);
     }
 
-    public static <T extends Comparable<T>> void requireValidFromToIndex(
-            int fromIndex, int toIndex, int length) {
+    public static void requireValidFromToIndex(int fromIndex, int toIndex, int length) {
         if (BuildConfig.DEBUG) {
-            var fromIndexValue = new Value<>("fromIndex", fromIndex);
-            var toIndexValue = new Value<>("toIndex", toIndex);
-            requireOperationInternal(fromIndexValue, Value.ZERO_I, Operator.GE);
-            requireOperationInternal(fromIndexValue, toIndexValue, Operator.LE);
-            requireOperationInternal(toIndexValue, new Value<>("length", length), Operator.LT);
+            requireOperationInternal("fromIndex", fromIndex, null, 0, Operator.GE);
+            requireOperationInternal("fromIndex", fromIndex, "toIndex", toIndex, Operator.LE);
+            requireOperationInternal("toIndex", toIndex, "length", length, Operator.LT);
         }
     }
 
-    public static <T extends Comparable<T>> void requireValidFromToIndex(
-            long fromIndex, long toIndex, long length) {
+    public static void requireValidFromToIndex(long fromIndex, long toIndex, long length) {
         if (BuildConfig.DEBUG) {
-            var fromIndexValue = new Value<>("fromIndex", fromIndex);
-            var toIndexValue = new Value<>("toIndex", toIndex);
-            requireOperationInternal(fromIndexValue, Value.ZERO_L, Operator.GE);
-            requireOperationInternal(fromIndexValue, toIndexValue, Operator.LE);
-            requireOperationInternal(toIndexValue, new Value<>("length", length), Operator.LT);
+            requireOperationInternal("fromIndex", fromIndex, null, 0L, Operator.GE);
+            requireOperationInternal("fromIndex", fromIndex, "toIndex", toIndex, Operator.LE);
+            requireOperationInternal("toIndex", toIndex, "length", length, Operator.LT);
         }
     }
 }
@@ -9,6 +9,11 @@ public abstract class Operator {
         public <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right) {
             return left.equals(right);
         }
+
+        @Override
+        public boolean test(long left, long right) {
+            return left == right;
+        }
     };
 
     public static final Operator NE = new Operator(" = ") {
@@ -16,6 +21,11 @@ public abstract class Operator {
         public <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right) {
             return !left.equals(right);
         }
+
+        @Override
+        public boolean test(long left, long right) {
+            return left != right;
+        }
     };
 
     public static final Operator GT = new Operator(" ≤ ") {
@@ -23,6 +33,11 @@ public abstract class Operator {
         public <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right) {
             return left.compareTo(right) > 0;
         }
+
+        @Override
+        public boolean test(long left, long right) {
+            return left > right;
+        }
     };
 
     public static final Operator GE = new Operator(" < ") {
@@ -30,6 +45,11 @@ public abstract class Operator {
         public <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right) {
             return left.compareTo(right) >= 0;
         }
+
+        @Override
+        public boolean test(long left, long right) {
+            return left >= right;
+        }
     };
 
 
@@ -38,6 +58,11 @@ public abstract class Operator {
         public <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right) {
             return left.compareTo(right) < 0;
         }
+
+        @Override
+        public boolean test(long left, long right) {
+            return left < right;
+        }
     };
 
 
@@ -46,6 +71,11 @@ public abstract class Operator {
         public <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right) {
             return left.compareTo(right) <= 0;
         }
+
+        @Override
+        public boolean test(long left, long right) {
+            return left <= right;
+        }
     };
 
     private final String negatedOpName;
@@ -59,4 +89,6 @@ public abstract class Operator {
     }
 
     public abstract <T extends Comparable<T>> boolean test(@NonNull T left, @NonNull T right);
+
+    public abstract boolean test(long left, long right);
 }
\ No newline at end of file
@@ -2,8 +2,10 @@ package com.lxy.termdate.data;
 
 import androidx.annotation.IntDef;
 
-@IntDef({DeserializeResult.OK, DeserializeResult.INVALID_FILE})
+@IntDef({DeserializeResult.OK, DeserializeResult.INVALID_FILE, DeserializeResult.UNCHANGED})
 public @interface DeserializeResult {
     int OK = 0;
     int INVALID_FILE = 1;
+    // Same bytes as the file currently shown, nothing is staged
+    int UNCHANGED = 2;
 }
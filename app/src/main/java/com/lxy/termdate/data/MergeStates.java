@@ -1,101 +1,84 @@
 package com.lxy.termdate.data;
 
-import androidx.annotation.NonNull;
-
 import com.lxy.termdate.BuildConfig;
-import com.lxy.termdate.GlobalContext;
-import com.lxy.termdate.R;
 import com.lxy.termdate.contract.Contract;
-import com.lxy.termdate.contract.Operator;
-import com.lxy.termdate.contract.Value;
-
-import java.io.IOException;
 
+/**
+ * Decodes merge states at runtime without allocation. A merge state is a bitset of
+ * (rowCount - 1) bits, bit i means row (rowCount - 2 - i) is merged with the row below it, every
+ * run of set bits is one merged row. The cursor aligns the first row to the same bit whatever the
+ * row count, and runs are walked from the most significant bit with
+ * {@link Integer#numberOfLeadingZeros(int)}:
+ * <br>
+ * <code>
+ * for (var cursor = MergeStates.begin(mergeState, rowCount); MergeStates.hasNext(cursor);
+ * cursor = MergeStates.next(cursor)) { <br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;var mergedRow = MergeStates.get(cursor); <br>
+ * } <br>
+ * </code>
+ */
 public class MergeStates {
+    // Leading zeros of the bit representing the first row
+    private static final int ROW_OFFSET = Integer.SIZE - TermDateData.MAX_ROW_COUNT;
 
-    private static final int MERGE_ROWS_STRIDE = TermDateData.MAXIMUM_MERGED_ROW * (2 * Byte.BYTES) + 1;
-    // Merged states now generated compile time as raw resource
-    @NonNull
-    private static final byte[] MERGE_STATE;
-
-    static {
-        final var SIZE = (TermDateData.MAXIMUM_MERGED_ROWS + 1) * (TermDateData.MAXIMUM_MERGED_ROW * 2 + 1);
+    private static int firstRowLeadingZeros(int cursor) {
+        return Integer.numberOfLeadingZeros(cursor);
+    }
 
-        byte[] state;
-        try {
-            try (var stream = GlobalContext.get().getResources().openRawResource(R.raw.merged_rows)) {
-                state = new byte[SIZE];
-                var result = stream.read(state, 0, SIZE);
-                Contract.requireOperation(new Value<>("result", result),
-                        new Value<>(SIZE), Operator.EQ);
-            }
-        } catch (IOException e) {
-            state = Contract.fail("Cannot load merged states", e);
-        }
-        MERGE_STATE = state;
+    private static int lastRowLeadingZeros(int cursor, int firstRowLeadingZeros) {
+        // First clear bit below the first row ends the run, it always exists because bit 0 is clear
+        return Integer.numberOfLeadingZeros(~cursor & (-1 >>> firstRowLeadingZeros));
     }
 
-    private final int mergedRowsStartIndex;
-    private final byte count;
+    /**
+     * Begin walking a merge state of the classic layout
+     */
+    public static int begin(char mergeState) {
+        Contract.requireValidIndex(mergeState, TermDateData.MAXIMUM_MERGED_ROWS + 1);
+        return mergeState << (1 + TermDateData.MAX_ROW_COUNT - TermDateData.ROW_COUNT);
+    }
 
-    public MergeStates(char mergedRowsIndex) {
-        Contract.requireValidIndex(mergedRowsIndex, TermDateData.MAXIMUM_MERGED_ROWS);
-        var mergedRowsStartIndex = mergedRowsIndex * MERGE_ROWS_STRIDE;
-        this.count = MERGE_STATE[mergedRowsStartIndex];
-        this.mergedRowsStartIndex = mergedRowsIndex;
+    public static int begin(char mergeState, int rowCount) {
+        if (rowCount == TermDateData.ROW_COUNT) {
+            return begin(mergeState);
+        }
+        Contract.requireValidIndex(mergeState, TermDateData.maximumMergeState(rowCount) + 1);
+        // Shift left so that bit 0 is always clear and terminates the last run
+        return mergeState << (1 + TermDateData.MAX_ROW_COUNT - rowCount);
     }
 
-    public static int getFirstRow(char mergedRow) {
-        var firstRow = (byte) (mergedRow >> 8);
-        TermDateData.validateRowIndex(firstRow);
-        return firstRow;
+    public static boolean hasNext(int cursor) {
+        return cursor != 0;
     }
 
-    public static int getLastRow(char mergedRow) {
-        var lastRow = (byte) (mergedRow);
-        TermDateData.validateRowIndex(lastRow);
-        return lastRow;
+    public static int next(int cursor) {
+        var lastRowLeadingZeros = lastRowLeadingZeros(cursor, firstRowLeadingZeros(cursor));
+        return cursor & (-1 >>> lastRowLeadingZeros);
     }
 
-    public int getCount() {
-        return count;
+    public static char get(int cursor) {
+        if (BuildConfig.DEBUG) {
+            Contract.require(hasNext(cursor), "No more merged rows");
+        }
+        var firstRowLeadingZeros = firstRowLeadingZeros(cursor);
+        var lastRowLeadingZeros = lastRowLeadingZeros(cursor, firstRowLeadingZeros);
+        return (char) (((firstRowLeadingZeros - ROW_OFFSET) << 8) | (lastRowLeadingZeros - ROW_OFFSET));
     }
 
-    public char get(int mergedRowIndex) {
-        Contract.requireValidIndex(mergedRowIndex, count);
-        var start = computeStartIndex(mergedRowIndex);
-        return (char) ((MERGE_STATE[start] << 8) | Byte.toUnsignedInt(MERGE_STATE[start + 1]));
+    public static int getCount(char mergeState) {
+        // Count the lowest bit of every run
+        return Integer.bitCount(mergeState & ~(mergeState << 1));
     }
 
-    private int computeStartIndex(int mergedRowIndex) {
-        return mergedRowsStartIndex + mergedRowIndex * 2 + 1;
+    public static int getFirstRow(char mergedRow) {
+        var firstRow = (byte) (mergedRow >> 8);
+        Contract.requireValidIndex(firstRow, TermDateData.MAX_ROW_COUNT);
+        return firstRow;
     }
 
-    @NonNull
-    @Override
-    public String toString() {
-        if (!BuildConfig.DEBUG) {
-            return super.toString();
-        }
-        var max = this.count - 1;
-        var index = mergedRowsStartIndex / MERGE_ROWS_STRIDE;
-        var sb = new StringBuilder();
-        sb.append("Index: ").append(index).append(", Rows: [");
-        if (max == -1) {
-            return sb.append(']').toString();
-        }
-        var mergeState = MERGE_STATE;
-        for (var i = 0; ; i++) {
-            var startIndex = computeStartIndex(i);
-            sb.append('{')
-                    .append(mergeState[startIndex])
-                    .append(", ")
-                    .append(mergeState[startIndex + 1])
-                    .append('}');
-            if (i == max) {
-                return sb.append(']').toString();
-            }
-            sb.append(", ");
-        }
+    public static int getLastRow(char mergedRow) {
+        var lastRow = (byte) (mergedRow);
+        Contract.requireValidIndex(lastRow, TermDateData.MAX_ROW_COUNT);
+        return lastRow;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package com.lxy.termdate.data;
+
+import androidx.annotation.NonNull;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+
+import java.util.Arrays;
+
+/**
+ * Immutable termdate data, produced by {@link TermDateCodec} and safe to share between threads
+ */
+public class TermDate {
+    private static final int INVALID = -1;
+    @NonNull
+    public static final TermDate EMPTY = new TermDate(INVALID, createEmptyView(), createEmptyView(),
+            new char[TermDateData.COLUMN_COUNT]);
+
+    private final int beginDate;
+    // Views are indexed by [column][row]
+    @NonNull
+    private final String[][] oddView;
+    @NonNull
+    private final String[][] evenView;
+    @NonNull
+    private final char[] mergeStates;
+    private final int columnCount;
+    private final int rowCount;
+
+    // Arrays are owned by this instance afterwards and never modified
+    TermDate(int beginDate, @NonNull String[][] oddView, @NonNull String[][] evenView,
+             @NonNull char[] mergeStates) {
+        this.beginDate = beginDate;
+        this.oddView = Contract.requireNonNull(oddView);
+        this.evenView = Contract.requireNonNull(evenView);
+        this.mergeStates = Contract.requireNonNull(mergeStates);
+        columnCount = oddView.length;
+        rowCount = oddView[0].length;
+        if (BuildConfig.DEBUG) {
+            // Constants only, EMPTY is built while TermDateData may still be initializing
+            Contract.require(columnCount <= TermDateData.MAX_COLUMN_COUNT &&
+                    rowCount <= TermDateData.MAX_ROW_COUNT, "Invalid layout");
+            Contract.require(evenView.length == columnCount && evenView[0].length == rowCount &&
+                    mergeStates.length == columnCount, "Views and merge states differ in layout");
+        }
+    }
+
+    @NonNull
+    private static String[][] createEmptyView() {
+        var view = new String[TermDateData.COLUMN_COUNT][TermDateData.ROW_COUNT];
+        for (var column = 0; column < TermDateData.COLUMN_COUNT; column++) {
+            Arrays.fill(view[column], "");
+        }
+        return view;
+    }
+
+    public int getBeginDate() {
+        return beginDate;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean hasSameLayout(@NonNull TermDate other) {
+        return columnCount == other.columnCount && rowCount == other.rowCount;
+    }
+
+    public boolean isValid() {
+        return beginDate >= 0;
+    }
+
+    @NonNull
+    public String getOdd(int column, int row) {
+        return oddView[column][row];
+    }
+
+    @NonNull
+    public String getEven(int column, int row) {
+        return evenView[column][row];
+    }
+
+    public char getMergeState(int column) {
+        Contract.requireValidIndex(column, columnCount);
+        return mergeStates[column];
+    }
+
+    // Callers must not modify returned arrays
+
+    @NonNull
+    String[][] oddView() {
+        return oddView;
+    }
+
+    @NonNull
+    String[][] evenView() {
+        return evenView;
+    }
+}
@@ -0,0 +1,791 @@
+package com.lxy.termdate.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.contract.Operator;
+import com.lxy.termdate.util.ByteArrayAppender;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import timber.log.Timber;
+
+/**
+ * Encodes and decodes termdate files. Each instance owns its scratch buffers, so an instance must
+ * not be used by two threads at once, but separate instances can run in parallel<br>
+ * Version 1 files have no header and start directly with the payload. Version 2 files start with
+ * a little endian header: magic (4 bytes), version (2 bytes), flags (2 bytes), payload length
+ * (4 bytes) and CRC32 of payload (4 bytes). Payload is begin date (4 bytes), odd and even strings of
+ * every cell in row major order, and merge states of every column<br>
+ * Version 1 and 2 files have the classic {@link TermDateData#COLUMN_COUNT} ×
+ * {@link TermDateData#ROW_COUNT} layout and are still written for it. Version 3 files append column
+ * count (1 byte) and row count (1 byte) to the version 2 header, and CRC32 covers them along with
+ * payload. A merge state takes (rowCount + 6) / 8 bytes, which is 2 bytes for the classic layout<br>
+ * With {@link #FLAG_STRING_TABLE}, odd and even strings are replaced by a table of distinct strings
+ * (1 byte count followed by the strings) and a 1 byte table index for odd and even of every cell<br>
+ * Without {@link #FLAG_COMPACT_STRINGS}, a string is 1 byte length followed by UTF-16LE chars. With
+ * it, a string starts with 1 byte encoding: {@link #ENCODING_UTF_16} and {@link #ENCODING_LATIN_1}
+ * are followed by 1 byte char count and 2 or 1 bytes per char, {@link #ENCODING_UTF_8} is followed
+ * by 2 bytes byte count and UTF-8 bytes<br>
+ * With {@link #FLAG_EMPTY_RUNS}, cells whose odd and even strings are both empty are omitted. Each
+ * cell is preceded by 1 byte count of empty cells before it, and trailing empty cells are written
+ * as a final count
+ */
+public class TermDateCodec {
+    // "TDAT", can never be a version 1 begin date, which is at most BuildConfig.MAX_DATE
+    private static final int MAGIC = 0x54414454;
+    private static final int VERSION_2 = 2;
+    private static final int VERSION_3 = 3;
+    private static final int FLAG_STRING_TABLE = 1;
+    private static final int FLAG_COMPACT_STRINGS = 1 << 1;
+    private static final int FLAG_EMPTY_RUNS = 1 << 2;
+    private static final int SUPPORTED_FLAGS =
+            FLAG_STRING_TABLE | FLAG_COMPACT_STRINGS | FLAG_EMPTY_RUNS;
+    // Header fields packed above payload length in high 32 bits of hash, payload length is less
+    // than 1 << HASH_VERSION_SHIFT as files are at most READ_LIMIT bytes
+    private static final int HASH_VERSION_SHIFT = 24;
+    private static final int HASH_FLAGS_SHIFT = 26;
+    private static final int ENCODING_UTF_16 = 0;
+    private static final int ENCODING_LATIN_1 = 1;
+    private static final int ENCODING_UTF_8 = 2;
+    // A char takes at most 3 bytes in UTF-8, a surrogate pair takes 4
+    private static final int MAX_UTF_8_LENGTH = TermDateData.MAX_STRING_LENGTH * 3;
+    // Every string of every cell is distinct in the worst case
+    private static final int MAX_STRING_TABLE_SIZE = TermDateData.MAX_CELL_COUNT * 2;
+    @NonNull
+    private static final byte[] EMPTY_HEADER = new byte[TermDateData.MAX_HEADER_SIZE];
+
+    @NonNull
+    private final byte[] readWriteBuffer = new byte[Long.BYTES];
+    // Used to decode strings from buffers without accessible array, e.g. mapped buffers
+    @NonNull
+    private final byte[] stringBytes = new byte[MAX_UTF_8_LENGTH];
+    @NonNull
+    private final CRC32 checksum = new CRC32();
+    // Scratch state of encode, maps distinct strings to their table index
+    @NonNull
+    private final HashMap<String, Integer> stringIndices = new HashMap<>();
+    @NonNull
+    private final String[] stringTable = new String[MAX_STRING_TABLE_SIZE];
+    @NonNull
+    private final byte[] cellIndices = new byte[MAX_STRING_TABLE_SIZE];
+    // Scratch state of decode, layout read from header
+    private int columnCount = TermDateData.COLUMN_COUNT;
+    private int rowCount = TermDateData.ROW_COUNT;
+
+    @NonNull
+    private static String readUtf16String(@NonNull ByteBuffer buffer, int length) {
+        if (length == 0) {
+            return "";
+        }
+        var end = buffer.position() + length * Character.BYTES;
+        if (end > buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        if (BuildConfig.DEBUG) {
+            Timber.d("String length: %d", length);
+        }
+        // Decode through a char view of buffer (little endian, same as buffer), works for both
+        // heap and mapped buffers without copying to an intermediate buffer
+        var chars = buffer.asCharBuffer();
+        chars.limit(length);
+        var value = chars.toString();
+        buffer.position(end);
+        return value;
+    }
+
+    @NonNull
+    private String readBytesString(@NonNull ByteBuffer buffer, int byteLength,
+                                   @NonNull Charset charset) {
+        if (byteLength > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (byteLength == 0) {
+            return "";
+        }
+        // Decode heap buffers in place, copy mapped buffers to scratch buffer first
+        if (buffer.hasArray()) {
+            var position = buffer.position();
+            buffer.position(position + byteLength);
+            return new String(buffer.array(), buffer.arrayOffset() + position, byteLength, charset);
+        }
+        var bytes = stringBytes;
+        buffer.get(bytes, 0, byteLength);
+        return new String(bytes, 0, byteLength, charset);
+    }
+
+    /**
+     * Read a string
+     *
+     * @param buffer  Buffer positioned at the string
+     * @param compact Whether file has {@link #FLAG_COMPACT_STRINGS}
+     * @return Decoded string, or null if the string is invalid
+     */
+    @Nullable
+    private String readString(@NonNull ByteBuffer buffer, boolean compact) {
+        if (!compact) {
+            return readUtf16String(buffer, Byte.toUnsignedInt(buffer.get()));
+        }
+        var encoding = Byte.toUnsignedInt(buffer.get());
+        switch (encoding) {
+            case ENCODING_UTF_16 -> {
+                return readUtf16String(buffer, Byte.toUnsignedInt(buffer.get()));
+            }
+            case ENCODING_LATIN_1 -> {
+                return readBytesString(buffer, Byte.toUnsignedInt(buffer.get()),
+                        StandardCharsets.ISO_8859_1);
+            }
+            case ENCODING_UTF_8 -> {
+                var byteLength = (int) buffer.getChar();
+                if (byteLength > MAX_UTF_8_LENGTH) {
+                    break;
+                }
+                var value = readBytesString(buffer, byteLength, StandardCharsets.UTF_8);
+                if (value.length() > TermDateData.MAX_STRING_LENGTH) {
+                    break;
+                }
+                return value;
+            }
+        }
+        if (BuildConfig.DEBUG) {
+            Timber.e("Invalid string encoding %d", encoding);
+        }
+        return null;
+    }
+
+    private static void putLittleEndianInt(@NonNull byte[] array, int offset, int value) {
+        array[offset] = (byte) value;
+        array[offset + 1] = (byte) (value >> 8);
+        array[offset + 2] = (byte) (value >> 16);
+        array[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void putLittleEndianChar(@NonNull byte[] array, int offset, int value) {
+        array[offset] = (byte) value;
+        array[offset + 1] = (byte) (value >> 8);
+    }
+
+    private byte[] prepareReadWriteBuffer() {
+        var buffer = readWriteBuffer;
+        if (BuildConfig.DEBUG) {
+            Arrays.fill(buffer, (byte) 0);
+        }
+        return buffer;
+    }
+
+    private void writeLittleEndianInt(@NonNull ByteArrayAppender appender, int value) {
+        var buffer = prepareReadWriteBuffer();
+        putLittleEndianInt(buffer, 0, value);
+        appender.append(buffer, Integer.BYTES);
+    }
+
+    private static boolean isLatin1(@NonNull String value) {
+        for (var i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get UTF-8 byte count of value
+     *
+     * @return Byte count, or -1 if value contains unpaired surrogates, which can't round trip
+     */
+    private static int utf8Length(@NonNull String value) {
+        var length = value.length();
+        var byteLength = 0;
+        for (var i = 0; i < length; i++) {
+            var ch = value.charAt(i);
+            if (ch < 0x80) {
+                byteLength++;
+            } else if (ch < 0x800) {
+                byteLength += 2;
+            } else if (!Character.isSurrogate(ch)) {
+                byteLength += 3;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                byteLength += 4;
+                i++;
+            } else {
+                return -1;
+            }
+        }
+        return byteLength;
+    }
+
+    private static int selectEncoding(@NonNull String value) {
+        if (isLatin1(value)) {
+            return ENCODING_LATIN_1;
+        }
+        var utf8Length = utf8Length(value);
+        // UTF-8 needs 1 more byte for length
+        return utf8Length >= 0 && utf8Length + Byte.BYTES < value.length() * Character.BYTES ?
+                ENCODING_UTF_8 : ENCODING_UTF_16;
+    }
+
+    private static int encodedSize(@NonNull String value) {
+        var length = value.length();
+        return switch (selectEncoding(value)) {
+            case ENCODING_LATIN_1 -> Byte.BYTES * 2 + length;
+            case ENCODING_UTF_8 -> Byte.BYTES + Character.BYTES + utf8Length(value);
+            default -> Byte.BYTES * 2 + length * Character.BYTES;
+        };
+    }
+
+    // Write chars directly from value, without copying them to an intermediate array
+    private static void writeString(@NonNull ByteArrayAppender appender, @NonNull String value) {
+        Contract.requireNonNull(appender);
+        Contract.requireNonNull(value);
+        var length = value.length();
+        Contract.requireOperation("length", length, TermDateData.MAX_STRING_LENGTH, Operator.LE);
+        var encoding = selectEncoding(value);
+        appender.append(encoding);
+        switch (encoding) {
+            case ENCODING_LATIN_1 -> {
+                appender.append(length);
+                for (var i = 0; i < length; i++) {
+                    appender.append(value.charAt(i));
+                }
+            }
+            case ENCODING_UTF_8 -> {
+                var byteLength = utf8Length(value);
+                appender.append(byteLength);
+                appender.append(byteLength >> 8);
+                for (var i = 0; i < length; i++) {
+                    int codePoint = value.charAt(i);
+                    if (codePoint < 0x80) {
+                        appender.append(codePoint);
+                    } else if (codePoint < 0x800) {
+                        appender.append(0xC0 | (codePoint >> 6));
+                        appender.append(0x80 | (codePoint & 0x3F));
+                    } else if (!Character.isSurrogate((char) codePoint)) {
+                        appender.append(0xE0 | (codePoint >> 12));
+                        appender.append(0x80 | ((codePoint >> 6) & 0x3F));
+                        appender.append(0x80 | (codePoint & 0x3F));
+                    } else {
+                        // Surrogates are paired, otherwise UTF-16 would be selected
+                        codePoint = Character.toCodePoint((char) codePoint, value.charAt(++i));
+                        appender.append(0xF0 | (codePoint >> 18));
+                        appender.append(0x80 | ((codePoint >> 12) & 0x3F));
+                        appender.append(0x80 | ((codePoint >> 6) & 0x3F));
+                        appender.append(0x80 | (codePoint & 0x3F));
+                    }
+                }
+            }
+            default -> {
+                appender.append(length);
+                for (var i = 0; i < length; i++) {
+                    var ch = value.charAt(i);
+                    appender.append(ch);
+                    appender.append(ch >> 8);
+                }
+            }
+        }
+    }
+
+    private static boolean isEmptyCell(@NonNull TermDate termDate, int column, int row) {
+        return termDate.getOdd(column, row).isEmpty() && termDate.getEven(column, row).isEmpty();
+    }
+
+    /**
+     * Fill {@link #stringTable} and {@link #cellIndices} from termDate, in the order cells are
+     * written
+     *
+     * @param termDate Termdate data to encode
+     * @return Count of distinct strings
+     */
+    private int buildStringTable(@NonNull TermDate termDate) {
+        var columnCount = termDate.getColumnCount();
+        var cellCount = columnCount * termDate.getRowCount();
+        var count = 0;
+        for (var cell = 0; cell < cellCount; cell++) {
+            var row = cell / columnCount;
+            var column = cell % columnCount;
+            count = addString(termDate.getOdd(column, row), cell * 2, count);
+            count = addString(termDate.getEven(column, row), cell * 2 + 1, count);
+        }
+        stringIndices.clear();
+        return count;
+    }
+
+    private int addString(@NonNull String value, int cellIndex, int count) {
+        var index = stringIndices.putIfAbsent(value, count);
+        if (index == null) {
+            stringTable[count] = value;
+            cellIndices[cellIndex] = (byte) count;
+            return count + 1;
+        }
+        cellIndices[cellIndex] = (byte) (int) index;
+        return count;
+    }
+
+    private void writeCells(@NonNull ByteArrayAppender buffer, @NonNull TermDate termDate,
+                            boolean useStringTable, boolean useEmptyRuns) {
+        var cellIndices = this.cellIndices;
+        var columnCount = termDate.getColumnCount();
+        var cellCount = columnCount * termDate.getRowCount();
+        var emptyRun = 0;
+        for (var cell = 0; cell < cellCount; cell++) {
+            var row = cell / columnCount;
+            var column = cell % columnCount;
+            if (useEmptyRuns) {
+                if (isEmptyCell(termDate, column, row)) {
+                    emptyRun++;
+                    continue;
+                }
+                buffer.append(emptyRun);
+                emptyRun = 0;
+            }
+            if (useStringTable) {
+                buffer.append(cellIndices[cell * 2]);
+                buffer.append(cellIndices[cell * 2 + 1]);
+            } else {
+                writeString(buffer, termDate.getOdd(column, row));
+                writeString(buffer, termDate.getEven(column, row));
+            }
+        }
+        if (emptyRun > 0) {
+            buffer.append(emptyRun);
+        }
+    }
+
+    @NonNull
+    public ByteArrayAppender encode(@NonNull TermDate termDate) {
+        Contract.requireNonNull(termDate);
+        if (BuildConfig.DEBUG) {
+            Timber.d("Serialize termdate data");
+        }
+        var stringCount = buildStringTable(termDate);
+        var stringTable = this.stringTable;
+        // Sizes of non-empty cells, string table only pays off if it is smaller than writing every
+        // string in place
+        var plainSize = 0;
+        var tableSize = Byte.BYTES;
+        var emptyCount = 0;
+        var emptyRunCount = 0;
+        var emptyRun = false;
+        var columnCount = termDate.getColumnCount();
+        var rowCount = termDate.getRowCount();
+        for (var row = 0; row < rowCount; row++) {
+            for (var column = 0; column < columnCount; column++) {
+                emptyRun = isEmptyCell(termDate, column, row);
+                if (emptyRun) {
+                    emptyCount++;
+                } else {
+                    plainSize += encodedSize(termDate.getOdd(column, row)) +
+                            encodedSize(termDate.getEven(column, row));
+                    tableSize += Byte.BYTES * 2;
+                    emptyRunCount++;
+                }
+            }
+        }
+        if (emptyRun) {
+            emptyRunCount++;
+        }
+        for (var i = 0; i < stringCount; i++) {
+            tableSize += encodedSize(stringTable[i]);
+        }
+        var useStringTable = tableSize < plainSize;
+        // Every non-empty cell and trailing empty cells cost 1 byte for empty run, which only
+        // pays off if enough cells are empty
+        var emptyCellSize = useStringTable ? Byte.BYTES * 2 : encodedSize("") * 2;
+        var useEmptyRuns = emptyRunCount < emptyCount * emptyCellSize;
+        var flags = FLAG_COMPACT_STRINGS | (useStringTable ? FLAG_STRING_TABLE : 0) |
+                (useEmptyRuns ? FLAG_EMPTY_RUNS : 0);
+        if (BuildConfig.DEBUG) {
+            Timber.d("Distinct strings: %d, plain size: %d, table size: %d, empty cells: %d",
+                    stringCount, plainSize, tableSize, emptyCount);
+        }
+        var buffer = new ByteArrayAppender(TermDateData.ESTIMATED_FILE_SIZE);
+        // Header is filled after payload is written, classic layout keeps version 2 header
+        var classic = columnCount == TermDateData.COLUMN_COUNT && rowCount == TermDateData.ROW_COUNT;
+        var headerSize = classic ? TermDateData.HEADER_SIZE : TermDateData.MAX_HEADER_SIZE;
+        buffer.append(EMPTY_HEADER, headerSize);
+        writeLittleEndianInt(buffer, termDate.getBeginDate());
+        if (useStringTable) {
+            buffer.append(stringCount);
+            for (var i = 0; i < stringCount; i++) {
+                writeString(buffer, stringTable[i]);
+            }
+        }
+        writeCells(buffer, termDate, useStringTable, useEmptyRuns);
+        Arrays.fill(stringTable, 0, stringCount, null);
+        var mergeStateSize = mergeStateSize(rowCount);
+        for (var column = 0; column < columnCount; column++) {
+            var mergeState = termDate.getMergeState(column);
+            for (var i = 0; i < mergeStateSize; i++) {
+                buffer.append(mergeState >> (i * Byte.SIZE));
+            }
+        }
+        if (classic) {
+            writeHeader(buffer, VERSION_2, flags, TermDateData.HEADER_SIZE);
+        } else {
+            var array = buffer.buffer();
+            array[TermDateData.HEADER_SIZE] = (byte) columnCount;
+            array[TermDateData.HEADER_SIZE + 1] = (byte) rowCount;
+            writeHeader(buffer, VERSION_3, flags, TermDateData.MAX_HEADER_SIZE);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return Bytes taking a merge state of rowCount rows, (rowCount - 1) bits rounded up
+     */
+    private static int mergeStateSize(int rowCount) {
+        return (rowCount - 1 + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * Fill header, layout of version 3 must be written already
+     *
+     * @param headerSize Size of header, checksum covers everything after the checksum itself
+     */
+    private void writeHeader(@NonNull ByteArrayAppender appender, int version, int flags,
+                             int headerSize) {
+        var array = appender.buffer();
+        var payloadLength = appender.size() - headerSize;
+        var checksum = this.checksum;
+        checksum.reset();
+        checksum.update(array, TermDateData.HEADER_SIZE, appender.size() - TermDateData.HEADER_SIZE);
+        putLittleEndianInt(array, 0, MAGIC);
+        putLittleEndianChar(array, Integer.BYTES, version);
+        putLittleEndianChar(array, Integer.BYTES + Character.BYTES, flags);
+        putLittleEndianInt(array, Integer.BYTES + Character.BYTES * 2, payloadLength);
+        putLittleEndianInt(array, Integer.BYTES * 2 + Character.BYTES * 2, (int) checksum.getValue());
+    }
+
+    /**
+     * @return Size of layout following the version 2 header, checksummed along with payload
+     */
+    private static int layoutSize(int version) {
+        return version == VERSION_3 ? TermDateData.MAX_HEADER_SIZE - TermDateData.HEADER_SIZE : 0;
+    }
+
+    /**
+     * Read version 2 or 3 header, set {@link #columnCount} and {@link #rowCount} and limit buffer to
+     * payload
+     *
+     * @param buffer  Buffer positioned at magic
+     * @param trusted Whether to skip checksum verification
+     * @return Flags of the file, or -1 if header is invalid
+     */
+    private int readHeader(@NonNull ByteBuffer buffer, boolean trusted) {
+        buffer.getInt(); // magic
+        var version = (int) buffer.getChar();
+        var flags = (int) buffer.getChar();
+        var payloadLength = Integer.toUnsignedLong(buffer.getInt());
+        var expectedChecksum = Integer.toUnsignedLong(buffer.getInt());
+        if (BuildConfig.DEBUG) {
+            Timber.d("Header version: %d, flags: %d, payload length: %d, checksum: %d",
+                    version, flags, payloadLength, expectedChecksum);
+        }
+        if ((version != VERSION_2 && version != VERSION_3) || (flags & ~SUPPORTED_FLAGS) != 0) {
+            if (BuildConfig.DEBUG) {
+                Timber.e("Unsupported version %d or flags %d", version, flags);
+            }
+            return -1;
+        }
+        var layoutSize = layoutSize(version);
+        if (payloadLength + layoutSize > buffer.remaining()) {
+            if (BuildConfig.DEBUG) {
+                Timber.e("Payload truncated, %d bytes remaining", buffer.remaining());
+            }
+            return -1;
+        }
+        var position = buffer.position();
+        buffer.limit(position + layoutSize + (int) payloadLength);
+        if (!trusted) {
+            var checksum = this.checksum;
+            checksum.reset();
+            checksum.update(buffer);
+            buffer.position(position);
+            if (checksum.getValue() != expectedChecksum) {
+                if (BuildConfig.DEBUG) {
+                    Timber.e("Checksum mismatch, actual checksum: %d", checksum.getValue());
+                }
+                return -1;
+            }
+        }
+        if (version == VERSION_3) {
+            var columnCount = Byte.toUnsignedInt(buffer.get());
+            var rowCount = Byte.toUnsignedInt(buffer.get());
+            if (BuildConfig.DEBUG) {
+                Timber.d("Layout: %d columns, %d rows", columnCount, rowCount);
+            }
+            if (!TermDateData.isValidLayout(columnCount, rowCount)) {
+                if (BuildConfig.DEBUG) {
+                    Timber.e("Invalid layout %d x %d", columnCount, rowCount);
+                }
+                return -1;
+            }
+            this.columnCount = columnCount;
+            this.rowCount = rowCount;
+        }
+        return flags;
+    }
+
+    /**
+     * Read string table, so that equal strings share one instance
+     *
+     * @return Distinct strings, or null if string table is invalid
+     */
+    @Nullable
+    private String[] readStringTable(@NonNull ByteBuffer buffer, boolean compact) {
+        var count = Byte.toUnsignedInt(buffer.get());
+        if (count > columnCount * rowCount * 2) {
+            if (BuildConfig.DEBUG) {
+                Timber.e("Invalid string table size %d", count);
+            }
+            return null;
+        }
+        var table = new String[count];
+        for (var i = 0; i < count; i++) {
+            var value = readString(buffer, compact);
+            if (value == null) {
+                return null;
+            }
+            table[i] = value;
+        }
+        return table;
+    }
+
+    @Nullable
+    private static String readTableString(@NonNull ByteBuffer buffer, @NonNull String[] table) {
+        var index = Byte.toUnsignedInt(buffer.get());
+        if (index < table.length) {
+            return table[index];
+        }
+        if (BuildConfig.DEBUG) {
+            Timber.e("Invalid string index %d", index);
+        }
+        return null;
+    }
+
+    /**
+     * Read odd and even strings of every cell into views
+     *
+     * @param table     String table, or null if strings are stored in place
+     * @param emptyRuns Whether file has {@link #FLAG_EMPTY_RUNS}
+     * @return Whether all cells are valid
+     */
+    private boolean readCells(@NonNull ByteBuffer buffer, boolean compact, @Nullable String[] table,
+                              boolean emptyRuns, @NonNull String[][] oddView,
+                              @NonNull String[][] evenView) {
+        var columnCount = this.columnCount;
+        var cellCount = columnCount * rowCount;
+        var cell = 0;
+        while (cell < cellCount) {
+            if (emptyRuns) {
+                var emptyRun = Byte.toUnsignedInt(buffer.get());
+                if (emptyRun > cellCount - cell) {
+                    if (BuildConfig.DEBUG) {
+                        Timber.e("Invalid empty run %d at cell %d", emptyRun, cell);
+                    }
+                    return false;
+                }
+                // Empty cells share the "" constant, nothing is allocated for them
+                for (var end = cell + emptyRun; cell < end; cell++) {
+                    var column = cell % columnCount;
+                    var row = cell / columnCount;
+                    oddView[column][row] = "";
+                    evenView[column][row] = "";
+                }
+                if (cell == cellCount) {
+                    break;
+                }
+            }
+            var row = cell / columnCount;
+            var column = cell % columnCount;
+            var odd = table != null ? readTableString(buffer, table) : readString(buffer, compact);
+            var even = table != null ? readTableString(buffer, table) : readString(buffer, compact);
+            if (odd == null || even == null) {
+                return false;
+            }
+            if (BuildConfig.DEBUG) {
+                Timber.d("Deserialized cell %d, odd: \"%s\", even: \"%s\"", cell + 1, odd, even);
+            }
+            oddView[column][row] = odd;
+            evenView[column][row] = even;
+            cell++;
+        }
+        return true;
+    }
+
+    private static char readMergeState(@NonNull ByteBuffer buffer, int size) {
+        // Classic layout and up to 17 rows take exactly a char
+        if (size == Character.BYTES) {
+            return buffer.getChar();
+        }
+        var mergeState = 0;
+        for (var i = 0; i < size; i++) {
+            mergeState |= Byte.toUnsignedInt(buffer.get()) << (i * Byte.SIZE);
+        }
+        return (char) mergeState;
+    }
+
+    /**
+     * Read the whole file at once instead of issuing a read per length prefix and string. Reading
+     * stops at {@link TermDateData#READ_LIMIT}, files that long are rejected by decode
+     *
+     * @param stream Input stream
+     * @return Buffer containing the file
+     * @throws IOException If an I/O error occurs
+     */
+    @NonNull
+    public static ByteBuffer readFully(@NonNull InputStream stream) throws IOException {
+        Contract.requireNonNull(stream);
+        var appender = new ByteArrayAppender(TermDateData.ESTIMATED_FILE_SIZE);
+        appender.readFrom(stream, TermDateData.READ_LIMIT);
+        if (BuildConfig.DEBUG) {
+            Timber.d("File size: %d", appender.size());
+        }
+        return ByteBuffer.wrap(appender.buffer(), 0, appender.size());
+    }
+
+    /**
+     * Hash the remaining bytes of buffer without moving its position, the byte order of buffer
+     * will be set to little endian. Files with a valid version 2 or 3 header are hashed by the
+     * header alone, as its CRC32 already covers everything decoded, other files are hashed whole
+     *
+     * @param buffer Buffer containing a whole file
+     * @param verify Whether to verify CRC32 in the header, so that decode can skip it
+     * @return Header fields or size in high 32 bits and CRC32 in low 32 bits, or
+     * {@link TermDateData#NO_HASH} if verification failed
+     */
+    public long hash(@NonNull ByteBuffer buffer, boolean verify) {
+        Contract.requireNonNull(buffer);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        var position = buffer.position();
+        var size = buffer.remaining();
+        var checksum = this.checksum;
+        if (size >= TermDateData.HEADER_SIZE && buffer.getInt(position) == MAGIC) {
+            var version = (int) buffer.getChar(position + Integer.BYTES);
+            var flags = (int) buffer.getChar(position + Integer.BYTES + Character.BYTES);
+            var payloadLength = Integer.toUnsignedLong(
+                    buffer.getInt(position + Integer.BYTES + Character.BYTES * 2));
+            var layoutSize = layoutSize(version);
+            // Invalid headers are rejected by decode, hash such files whole
+            if ((version == VERSION_2 || version == VERSION_3) && (flags & ~SUPPORTED_FLAGS) == 0 &&
+                    payloadLength + layoutSize <= size - TermDateData.HEADER_SIZE) {
+                var expectedChecksum = Integer.toUnsignedLong(
+                        buffer.getInt(position + TermDateData.HEADER_SIZE - Integer.BYTES));
+                if (verify) {
+                    var limit = buffer.limit();
+                    buffer.position(position + TermDateData.HEADER_SIZE);
+                    buffer.limit(position + TermDateData.HEADER_SIZE + layoutSize + (int) payloadLength);
+                    checksum.reset();
+                    checksum.update(buffer);
+                    buffer.limit(limit);
+                    buffer.position(position);
+                    if (checksum.getValue() != expectedChecksum) {
+                        if (BuildConfig.DEBUG) {
+                            Timber.e("Checksum mismatch, actual checksum: %d", checksum.getValue());
+                        }
+                        return TermDateData.NO_HASH;
+                    }
+                }
+                // Bytes beyond payload are never decoded, so they are left out
+                var fields = (int) payloadLength | version << HASH_VERSION_SHIFT | flags << HASH_FLAGS_SHIFT;
+                return (long) fields << Integer.SIZE | expectedChecksum;
+            }
+        }
+        // Size is less than 1 << HASH_VERSION_SHIFT, never equal to hash of a header
+        checksum.reset();
+        checksum.update(buffer);
+        buffer.position(position);
+        return (long) size << Integer.SIZE | checksum.getValue();
+    }
+
+    /**
+     * Decode from buffer, the byte order of buffer will be set to little endian
+     *
+     * @param buffer  Buffer positioned at the beginning of termdate data
+     * @param trusted Whether buffer was written by this app, which skips checksum verification
+     * @return Decoded termdate data, or null if buffer doesn't contain a valid termdate file
+     */
+    @Nullable
+    public TermDate decode(@NonNull ByteBuffer buffer, boolean trusted) {
+        Contract.requireNonNull(buffer);
+        if (BuildConfig.DEBUG) {
+            Timber.d("Deserialize termdate data");
+        }
+        if (buffer.remaining() > TermDateData.MAX_FILE_SIZE) {
+            if (BuildConfig.DEBUG) {
+                Timber.e("Termdate file too large, size: %d", buffer.remaining());
+            }
+            return null;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        columnCount = TermDateData.COLUMN_COUNT;
+        rowCount = TermDateData.ROW_COUNT;
+        try {
+            var flags = 0;
+            // Version 1 files have no header
+            if (buffer.remaining() >= Integer.BYTES && buffer.getInt(buffer.position()) == MAGIC) {
+                flags = readHeader(buffer, trusted);
+                if (flags < 0) {
+                    return null;
+                }
+            }
+            var epochDay = Integer.toUnsignedLong(buffer.getInt());
+            if (epochDay <= BuildConfig.MAX_DATE) {
+                if (BuildConfig.DEBUG) {
+                    Timber.d("Julian day delta: %d", epochDay);
+                }
+            } else {
+                if (BuildConfig.DEBUG) {
+                    Timber.e("Invalid julian day delta %d", epochDay);
+                }
+                return null;
+            }
+            // Sized by the layout of this file
+            var columnCount = this.columnCount;
+            var rowCount = this.rowCount;
+            var oddView = new String[columnCount][rowCount];
+            var evenView = new String[columnCount][rowCount];
+            var compact = (flags & FLAG_COMPACT_STRINGS) != 0;
+            String[] table = null;
+            if ((flags & FLAG_STRING_TABLE) != 0) {
+                table = readStringTable(buffer, compact);
+                if (table == null) {
+                    return null;
+                }
+            }
+            if (!readCells(buffer, compact, table, (flags & FLAG_EMPTY_RUNS) != 0, oddView, evenView)) {
+                return null;
+            }
+            var mergeStates = new char[columnCount];
+            var mergeStateSize = mergeStateSize(rowCount);
+            var maximumMergeState = TermDateData.maximumMergeState(rowCount);
+            for (var i = 0; i < columnCount; i++) {
+                var mergeState = readMergeState(buffer, mergeStateSize);
+                if (mergeState > maximumMergeState) {
+                    if (BuildConfig.DEBUG) {
+                        Timber.e("Invalid merge state %d", (int) mergeState);
+                    }
+                    return null;
+                }
+                mergeStates[i] = mergeState;
+            }
+            return new TermDate((int) epochDay, oddView, evenView, mergeStates);
+        } catch (BufferUnderflowException e) {
+            if (BuildConfig.DEBUG) {
+                Timber.e(e, "End of file occurred because termdate data file is invalid");
+            }
+            return null;
+        }
+    }
+}
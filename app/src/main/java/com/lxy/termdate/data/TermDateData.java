@@ -1,298 +1,361 @@
 package com.lxy.termdate.data;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.lxy.termdate.BuildConfig;
 import com.lxy.termdate.contract.Contract;
 import com.lxy.termdate.contract.Operator;
-import com.lxy.termdate.contract.Value;
 import com.lxy.termdate.util.ByteArrayAppender;
-import com.lxy.termdate.util.DateUtil;
+import com.lxy.termdate.util.WeekClock;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.CharBuffer;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import timber.log.Timber;
 
 public class TermDateData {
+    // Classic layout, which files without dimensions in their header have, see TermDateCodec
     public static final int ROW_COUNT = 12;
     public static final int COLUMN_COUNT = 5;
     public static final int CELL_COUNT = ROW_COUNT * COLUMN_COUNT;
+    // Largest layout a file may have, a merge state of MAX_ROW_COUNT rows still fits a char, and
+    // both strings of every cell still fit 1 byte string table indices
+    public static final int MAX_ROW_COUNT = Character.SIZE + 1;
+    public static final int MAX_COLUMN_COUNT = 7;
+    public static final int MAX_CELL_COUNT = MAX_ROW_COUNT * MAX_COLUMN_COUNT;
     public static final int MIN_STRING_LENGTH = 0;
     public static final int MAX_STRING_LENGTH = (1 << Byte.SIZE) - 1;
 
     public static final int MAXIMUM_MERGED_ROW = TermDateData.ROW_COUNT / 2;
+    // magic + version + flags + payload length + checksum, see TermDateCodec
+    public static final int HEADER_SIZE = Integer.BYTES + Character.BYTES * 2 + Integer.BYTES * 2;
+    // Version 3 header adds column count and row count
+    public static final int MAX_HEADER_SIZE = HEADER_SIZE + Byte.BYTES * 2;
     @SuppressWarnings("PointlessArithmeticExpression")
-    public static final int MIN_FILE_SIZE = Integer.SIZE /* gregorian date */ +
+    public static final int MIN_FILE_SIZE = Integer.BYTES /* gregorian date */ +
             CELL_COUNT * 2 /* odd even */ * (Byte.BYTES /* length */ + MIN_STRING_LENGTH * Character.BYTES) +
             MAXIMUM_MERGED_ROW * Character.BYTES /* merge_state */;
-    public static final int ESTIMATED_FILE_SIZE = MIN_FILE_SIZE + 100;
-    @SuppressWarnings("unused")
-    public static final int MAX_FILE_SIZE = Integer.SIZE /* gregorian date */ +
-            CELL_COUNT * 2 /* odd even */ * (Byte.BYTES /* length */ + MAX_STRING_LENGTH * Character.BYTES) +
-            MAXIMUM_MERGED_ROW * Character.BYTES /* merge_state */;
+    public static final int ESTIMATED_FILE_SIZE = HEADER_SIZE + MIN_FILE_SIZE + 100;
+    public static final int MAX_FILE_SIZE = MAX_HEADER_SIZE + Integer.BYTES /* gregorian date */ +
+            MAX_CELL_COUNT * 2 /* odd even */ * (Byte.BYTES /* encoding */ + Byte.BYTES /* length */ +
+                    MAX_STRING_LENGTH * Character.BYTES) +
+            MAX_COLUMN_COUNT * Character.BYTES /* merge_state */;
+    // Files are read one byte beyond MAX_FILE_SIZE, so that oversized files are rejected
+    public static final int READ_LIMIT = MAX_FILE_SIZE + 1;
     public static final int MAXIMUM_MERGED_ROWS = (1 << (TermDateData.ROW_COUNT - 1)) - 1;
+    public static final long NO_HASH = -1;
+
+    // Static facade over TermDateCodec, holding termdate data currently shown
     @NonNull
-    public static final char[] MERGE_STATES = new char[COLUMN_COUNT];
+    private static final ThreadLocal<TermDateCodec> CODEC = ThreadLocal.withInitial(TermDateCodec::new);
+    // Views are indexed by [column][row] and never modified after being published
     @NonNull
-    public static final Cell[][] TIME_TABLE_DATA = new Cell[COLUMN_COUNT][ROW_COUNT];
+    private static final AtomicReference<String[][]> ACTIVE_VIEW =
+            new AtomicReference<>(TermDate.EMPTY.oddView());
 
     @NonNull
-    private static final byte[] READ_WRITE_BUFFER = new byte[Long.BYTES];
+    private static TermDate CURRENT = TermDate.EMPTY;
+    // Written by deserialize on I/O thread, published by commit on main thread
     @NonNull
-    private static final byte[] BYTE_BUFFER = new byte[TermDateData.MAX_STRING_LENGTH * Character.BYTES];
+    private static TermDate PENDING = TermDate.EMPTY;
+    // Hash of the bytes CURRENT was decoded from, read by I/O thread to skip unchanged files
+    private static volatile long CURRENT_HASH = NO_HASH;
+    private static long PENDING_HASH = NO_HASH;
+    // Hash of the bytes last loaded from or written to the internal file, written by writer thread
+    private static volatile long PERSISTED_HASH = NO_HASH;
+    // Snapshot CURRENT was restored from, if any
+    @Nullable
+    private static TermDateSnapshot CURRENT_SNAPSHOT = null;
+    @Nullable
+    private static TermDateSnapshot PENDING_SNAPSHOT = null;
+    // Changes of active view and merge states not yet taken, see takeChanges, main thread only
     @NonNull
-    private static final CharBuffer WRAPPED_CHAR_BUFFER =
-            ByteBuffer.wrap(BYTE_BUFFER).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
-    @NonNull
-    private static final char[] CHAR_BUFFER = new char[TermDateData.MAX_STRING_LENGTH];
-    private static final int INVALID = -1;
-
-    private static int BEGIN_DATE;
+    private static final int[] CHANGED_ROWS = new int[MAX_COLUMN_COUNT];
+    private static int CHANGED_MERGE_STATES = 0;
 
     static {
-        int row, column;
-        for (row = 0; row < ROW_COUNT; row++) {
-            for (column = 0; column < COLUMN_COUNT; column++) {
-                TIME_TABLE_DATA[column][row] = new Cell();
-            }
-        }
-        clearBeginDate();
+        set(TermDate.EMPTY);
     }
 
-    @NonNull
-    private static String arrayToString(@NonNull byte[] array, int length) {
-        Contract.requireValidIndex(length, array.length);
-        var max = length - 1;
-        if (max == -1) {
-            return "[]";
-        }
-        var sb = new StringBuilder("[");
-        for (var i = 0; ; i++) {
-            sb.append(Byte.toUnsignedInt(array[i]));
-            if (i == max) {
-                return sb.append(']').toString();
-            }
-            sb.append(", ");
+    private static void ensureValid() {
+        if (BuildConfig.DEBUG) {
+            Contract.require(isValid(), "Invalid weeks");
         }
     }
 
-    private static <T> T throwEOFException(int bytesToRead, int bytesRead) throws EOFException {
-        throw new EOFException("Cannot read " + bytesToRead +
-                " bytes because there are only " + bytesRead +
-                " bytes to read");
+    public static void validateRowIndex(int row) {
+        Contract.requireValidIndex(row, CURRENT.getRowCount());
     }
 
-    private static void checkedRead(@NonNull InputStream stream, byte[] buffer, int bytesToRead) throws IOException {
-        var bytesRead = stream.read(buffer, 0, bytesToRead);
-        if (bytesRead < bytesToRead) {
-            throwEOFException(bytesToRead, bytesRead);
-        }
+    @SuppressWarnings("unused")
+    public static void validateColumnIndex(int column) {
+        Contract.requireValidIndex(column, CURRENT.getColumnCount());
     }
 
-    private static byte[] prepareReadWriteBuffer() {
-        var buffer = READ_WRITE_BUFFER;
-        if (BuildConfig.DEBUG) {
-            Arrays.fill(buffer, (byte) 0);
-        }
-        return buffer;
+    public static boolean isValidLayout(int columnCount, int rowCount) {
+        return columnCount > 0 && columnCount <= MAX_COLUMN_COUNT &&
+                rowCount > 0 && rowCount <= MAX_ROW_COUNT;
     }
 
-    private static char readLittleEndianChar(@NonNull InputStream stream) throws IOException {
-        var buffer = prepareReadWriteBuffer();
-        checkedRead(stream, buffer, Character.BYTES);
-        return (char) ((buffer[1] << 8) | Byte.toUnsignedInt(buffer[0]));
+    /**
+     * @return Most merged rows a column of rowCount rows can have
+     */
+    public static int maximumMergedRow(int rowCount) {
+        return rowCount / 2;
     }
 
-    private static int readLittleEndianInt(@NonNull InputStream stream) throws IOException {
-        var buffer = prepareReadWriteBuffer();
-        checkedRead(stream, buffer, Integer.BYTES);
-        return (buffer[3] << 24) |
-                (Byte.toUnsignedInt(buffer[2])) << 16 |
-                (Byte.toUnsignedInt(buffer[1])) << 8 |
-                (Byte.toUnsignedInt(buffer[0]));
+    /**
+     * @return Largest merge state of rowCount rows, see {@link MergeStates}
+     */
+    public static int maximumMergeState(int rowCount) {
+        return (1 << (rowCount - 1)) - 1;
     }
 
     @NonNull
-    private static String readString(@NonNull InputStream stream) throws IOException {
-        var length = stream.read();
-        if (length == -1) {
-            return throwEOFException(1, 0);
-        }
-        if (BuildConfig.DEBUG) {
-            Arrays.fill(BYTE_BUFFER, (byte) 0);
-            Arrays.fill(CHAR_BUFFER, (char) 0);
-        }
-        var charBuffer = CHAR_BUFFER;
-        var byteBuffer = BYTE_BUFFER;
-        checkedRead(stream, byteBuffer, length * Character.BYTES);
-        if (BuildConfig.DEBUG) {
-            Timber.d("String length: %d, Raw bytes: %s", length,
-                    arrayToString(byteBuffer, length * Character.BYTES));
+    public static TermDate get() {
+        return CURRENT;
+    }
+
+    /**
+     * Replace termdate data currently shown, must be called on main thread
+     *
+     * @param termDate New termdate data
+     */
+    public static void set(@NonNull TermDate termDate) {
+        set(termDate, NO_HASH, null);
+    }
+
+    private static void set(@NonNull TermDate termDate, long hash, @Nullable TermDateSnapshot snapshot) {
+        var previous = CURRENT;
+        CURRENT = Contract.requireNonNull(termDate);
+        if (!previous.hasSameLayout(termDate)) {
+            CHANGED_MERGE_STATES = (1 << MAX_COLUMN_COUNT) - 1;
+        } else {
+            for (var column = 0; column < termDate.getColumnCount(); column++) {
+                if (previous.getMergeState(column) != termDate.getMergeState(column)) {
+                    CHANGED_MERGE_STATES |= 1 << column;
+                }
+            }
         }
-        // Directly copy to char buffer
-        var wrappedCharBuffer = WRAPPED_CHAR_BUFFER;
-        wrappedCharBuffer.clear();
-        wrappedCharBuffer.get(charBuffer, 0, length);
-        return new String(charBuffer, 0, length);
+        CURRENT_HASH = hash;
+        CURRENT_SNAPSHOT = snapshot;
+        WeekClock.refresh(termDate.getBeginDate());
+        refreshActiveView();
     }
 
-    private static void writeLittleEndianInt(@NonNull ByteArrayAppender appender, int value) {
-        var buffer = prepareReadWriteBuffer();
-        buffer[0] = (byte) value;
-        buffer[1] = (byte) (value >> 8);
-        buffer[2] = (byte) (value >> 16);
-        buffer[3] = (byte) (value >> 24);
-        appender.append(buffer, Integer.BYTES);
+    /**
+     * Get hash of the file data currently shown was decoded from
+     *
+     * @return Hash, or {@link #NO_HASH} if data is not decoded from a file
+     */
+    public static long hash() {
+        return CURRENT_HASH;
     }
 
-    private static void writeString(@NonNull ByteArrayAppender appender, @NonNull String value) {
-        Contract.requireNonNull(appender);
-        Contract.requireNonNull(value);
-        var length = value.length();
-        Contract.requireOperation(
-                new Value<>("length", length),
-                new Value<>(TermDateData.MAX_STRING_LENGTH),
-                Operator.LE
-        );
-        appender.append(length);
-        var charBuffer = CHAR_BUFFER;
-        value.getChars(0, length, charBuffer, 0);
-        writeLittleEndianCharArray(appender, charBuffer, length);
+    /**
+     * Record that data currently shown was loaded from the internal file, must be called on main
+     * thread after {@link #commit()}
+     */
+    public static void markPersisted() {
+        PERSISTED_HASH = CURRENT_HASH;
     }
 
-    private static void writeLittleEndianCharArray(@NonNull ByteArrayAppender appender,
-                                                   @NonNull char[] array, int length) {
-        for (var i = 0; i < length; i++) {
-            var ch = array[i];
-            appender.append(ch);
-            appender.append(ch >> 8);
-        }
+    /**
+     * Record that data was written to the internal file, so that loading the same bytes again is
+     * reported unchanged. May be called on any thread
+     *
+     * @param data Bytes written
+     */
+    public static void markPersisted(@NonNull ByteArrayAppender data) {
+        Contract.requireNonNull(data);
+        PERSISTED_HASH = CODEC.get().hash(ByteBuffer.wrap(data.buffer(), 0, data.size()), false);
+    }
+
+    /**
+     * Get the snapshot data currently shown was restored from
+     *
+     * @return Snapshot, or null if data was decoded from its file
+     */
+    @Nullable
+    public static TermDateSnapshot snapshot() {
+        return CURRENT_SNAPSHOT;
+    }
+
+    public static int columnCount() {
+        return CURRENT.getColumnCount();
+    }
+
+    public static int rowCount() {
+        return CURRENT.getRowCount();
     }
 
-    private static void serializeCell(ByteArrayAppender appender, @NonNull Cell cell) {
-        Contract.requireNonNull(cell);
-        writeString(appender, cell.getOdd());
-        writeString(appender, cell.getEven());
+    public static long beginDate() {
+        return CURRENT.getBeginDate();
     }
 
     @NonNull
-    private static Cell deserializeCell(InputStream stream) throws IOException {
-        return new Cell(readString(stream), readString(stream));
+    public static String getOdd(int column, int row) {
+        return CURRENT.getOdd(column, row);
     }
 
-    private static void ensureValid() {
-        if (BuildConfig.DEBUG) {
-            Contract.require(isValid(), "Invalid weeks");
-        }
+    @NonNull
+    public static String getEven(int column, int row) {
+        return CURRENT.getEven(column, row);
     }
 
-    private static void clearBeginDate() {
-        BEGIN_DATE = INVALID;
+    public static char getMergeState(int column) {
+        return CURRENT.getMergeState(column);
     }
 
-    public static void validateRowIndex(int row) {
-        Contract.requireValidIndex(row, ROW_COUNT);
+    /**
+     * Get the view matching current week parity, the returned array must not be modified
+     *
+     * @return Active view indexed by [column][row]
+     */
+    @NonNull
+    public static String[][] activeView() {
+        return ACTIVE_VIEW.get();
     }
 
-    @SuppressWarnings("unused")
-    public static void validateColumnIndex(int column) {
-        Contract.requireValidIndex(column, COLUMN_COUNT);
+    /**
+     * Get the view not matching current week parity, the returned array must not be modified
+     *
+     * @return Inactive view indexed by [column][row]
+     */
+    @NonNull
+    public static String[][] inactiveView() {
+        var current = CURRENT;
+        return ACTIVE_VIEW.get() == current.oddView() ? current.evenView() : current.oddView();
     }
 
-    public static long beginDate() {
-        return BEGIN_DATE;
+    /**
+     * Point active view to odd or even view according to {@link WeekClock}
+     *
+     * @return Whether active view changed and the table should be remeasured
+     */
+    public static boolean refreshActiveView() {
+        var current = CURRENT;
+        var view = current.isValid() && WeekClock.isEven() ? current.evenView() : current.oddView();
+        var previous = ACTIVE_VIEW.getAndSet(view);
+        if (previous == view) {
+            return false;
+        }
+        if (previous.length != view.length || previous[0].length != view[0].length) {
+            Arrays.fill(CHANGED_ROWS, (1 << MAX_ROW_COUNT) - 1);
+            return true;
+        }
+        for (var column = 0; column < view.length; column++) {
+            var previousColumn = previous[column];
+            var viewColumn = view[column];
+            var changedRows = 0;
+            for (var row = 0; row < viewColumn.length; row++) {
+                if (!previousColumn[row].equals(viewColumn[row])) {
+                    changedRows |= 1 << row;
+                }
+            }
+            CHANGED_ROWS[column] |= changedRows;
+        }
+        return true;
     }
 
-    public static boolean isEven() {
-        ensureValid();
-        return DateUtil.isEven(BEGIN_DATE, DateUtil.now());
+    /**
+     * Take changes since the last call, so that only changed cells are laid out again, must be
+     * called on main thread
+     *
+     * @param changedRows Filled with rows of active view changed in each column, bit i is row i,
+     *                    every row of every column if the layout changed
+     * @return Columns whose merge state changed, bit i is column i
+     */
+    public static int takeChanges(@NonNull int[] changedRows) {
+        Contract.requireOperation("changedRowsLength", Contract.requireNonNull(changedRows).length,
+                "maxColumnCount", MAX_COLUMN_COUNT, Operator.EQ);
+        System.arraycopy(CHANGED_ROWS, 0, changedRows, 0, MAX_COLUMN_COUNT);
+        Arrays.fill(CHANGED_ROWS, 0);
+        var changedMergeStates = CHANGED_MERGE_STATES;
+        CHANGED_MERGE_STATES = 0;
+        return changedMergeStates;
     }
 
     public static boolean isValid() {
-        return BEGIN_DATE >= 0;
+        return CURRENT.isValid();
     }
 
     public static void clear() {
-        clearBeginDate();
-        for (var row = 0; row < ROW_COUNT; row++) {
-            for (var column = 0; column < COLUMN_COUNT; column++) {
-                TIME_TABLE_DATA[column][row].clear();
-            }
-        }
-        Arrays.fill(MERGE_STATES, 0, COLUMN_COUNT, (char) 0);
+        set(TermDate.EMPTY);
     }
 
     @NonNull
     public static ByteArrayAppender serialize() {
-        if (BuildConfig.DEBUG) {
-            Timber.d("Serialize termdate data");
-        }
-        var buffer = new ByteArrayAppender(ESTIMATED_FILE_SIZE);
-        writeLittleEndianInt(buffer, BEGIN_DATE);
-        for (var row = 0; row < ROW_COUNT; row++) {
-            for (var column = 0; column < COLUMN_COUNT; column++) {
-                serializeCell(buffer, TIME_TABLE_DATA[column][row]);
-            }
-        }
-        writeLittleEndianCharArray(buffer, MERGE_STATES, COLUMN_COUNT);
-        return buffer;
+        return CODEC.get().encode(CURRENT);
     }
 
-    public static @DeserializeResult int deserialize(@NonNull InputStream stream) throws IOException {
-        if (BuildConfig.DEBUG) {
-            Timber.d("Deserialize termdate data");
+    public static @DeserializeResult int deserialize(@NonNull InputStream stream, boolean trusted)
+            throws IOException {
+        return deserialize(TermDateCodec.readFully(stream), trusted, null);
+    }
+
+    /**
+     * Deserialize from buffer without publishing, see {@link #commit()}. The byte order of buffer
+     * will be set to little endian. Buffer with the same bytes as data currently shown is not
+     * decoded at all, unless it failed to be persisted
+     *
+     * @param buffer   Buffer containing the whole termdate file
+     * @param trusted  Whether buffer was written by this app, which skips checksum verification
+     * @param snapshot Snapshot used instead of decoding if it was taken from the same bytes
+     * @return Deserialize result
+     */
+    public static @DeserializeResult int deserialize(@NonNull ByteBuffer buffer, boolean trusted,
+                                                     @Nullable TermDateSnapshot snapshot) {
+        var codec = CODEC.get();
+        var hash = codec.hash(buffer, !trusted);
+        if (hash == NO_HASH) {
+            return DeserializeResult.INVALID_FILE;
         }
-        try {
-            var epochDay = Integer.toUnsignedLong(readLittleEndianInt(stream));
-            if (epochDay <= BuildConfig.MAX_DATE) {
-                if (BuildConfig.DEBUG) {
-                    Timber.d("Julian day delta: %d", epochDay);
-                }
-            } else {
-                if (BuildConfig.DEBUG) {
-                    Timber.e("Invalid julian day delta %d", epochDay);
-                }
-                return DeserializeResult.INVALID_FILE;
-            }
-            var cells = new Cell[CELL_COUNT];
-            for (var i = 0; i < CELL_COUNT; i++) {
-                var cell = deserializeCell(stream);
-                if (BuildConfig.DEBUG) {
-                    Timber.d("Deserialized cell %d, odd: \"%s\", even: \"%s\"", i + 1, cell.getOdd(), cell.getEven());
-                }
-                cells[i] = cell;
-            }
-            var mergeStates = new char[COLUMN_COUNT];
-            for (var i = 0; i < COLUMN_COUNT; i++) {
-                var mergeState = readLittleEndianChar(stream);
-                if (mergeState > MAXIMUM_MERGED_ROWS) {
-                    if (BuildConfig.DEBUG) {
-                        Timber.e("Invalid merge state %d", (int) mergeState);
-                    }
-                    return DeserializeResult.INVALID_FILE;
-                }
-                mergeStates[i] = mergeState;
-            }
-            for (var row = 0; row < ROW_COUNT; row++) {
-                for (var column = 0; column < COLUMN_COUNT; column++) {
-                    TIME_TABLE_DATA[column][row].copyFrom(cells[row * TermDateData.COLUMN_COUNT + column]);
-                }
+        // Persisting is retried if writing these bytes to the internal file failed
+        if (hash == CURRENT_HASH && hash == PERSISTED_HASH) {
+            if (BuildConfig.DEBUG) {
+                Timber.d("Termdate file unchanged, hash: %016x", hash);
             }
-            System.arraycopy(mergeStates, 0, MERGE_STATES, 0, COLUMN_COUNT);
-            BEGIN_DATE = (int) epochDay;
-            ensureValid();
-            return DeserializeResult.OK;
-        } catch (EOFException e) {
+            return DeserializeResult.UNCHANGED;
+        }
+        if (snapshot != null && snapshot.getSourceHash() == hash) {
             if (BuildConfig.DEBUG) {
-                Timber.e(e, "End of file occurred because termdate data file is invalid");
+                Timber.d("Restore termdate from snapshot");
             }
+            return stage(snapshot.getTermDate(), hash, snapshot);
+        }
+        // Checksum is already verified by hash
+        return stage(codec.decode(buffer, true), hash, null);
+    }
+
+    private static @DeserializeResult int stage(@Nullable TermDate termDate, long hash,
+                                                @Nullable TermDateSnapshot snapshot) {
+        if (termDate == null) {
             return DeserializeResult.INVALID_FILE;
         }
+        PENDING = termDate;
+        PENDING_HASH = hash;
+        PENDING_SNAPSHOT = snapshot;
+        return DeserializeResult.OK;
+    }
+
+    /**
+     * Publish data deserialized by the last successful deserialize, must be called on main thread
+     * after deserialize completes
+     */
+    public static void commit() {
+        var pending = PENDING;
+        if (BuildConfig.DEBUG) {
+            Contract.require(pending.isValid(), "Nothing to commit");
+        }
+        var snapshot = PENDING_SNAPSHOT;
+        PENDING = TermDate.EMPTY;
+        PENDING_SNAPSHOT = null;
+        set(pending, PENDING_HASH, snapshot);
+        ensureValid();
     }
 }
@@ -0,0 +1,257 @@
+package com.lxy.termdate.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.util.ByteArrayAppender;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+import timber.log.Timber;
+
+/**
+ * Pre-decoded termdate data, saved after a termdate file is decoded and mapped back on cold start
+ * so that no termdate file needs to be parsed. Only valid while the source file hash matches<br>
+ * Little endian layout: magic (4 bytes), version (2 bytes), CRC32 of everything after it (4
+ * bytes), merged cell count (2 bytes), column count (1 byte), row count (1 byte), source hash (8
+ * bytes), begin date (4 bytes), merge states (2 bytes per column),
+ * merged cells (4 bytes each, see {@link #getMergedCells()}), end offset of every string (2 bytes
+ * each, odd view then even view, both in [column][row] order) and chars of all strings laid out
+ * contiguously
+ */
+public class TermDateSnapshot {
+    // "TDSN"
+    private static final int MAGIC = 0x4E534454;
+    private static final int VERSION = 4;
+    // Magic, version and checksum
+    private static final int HEADER_SIZE = Integer.BYTES + Character.BYTES + Integer.BYTES;
+
+    private final long sourceHash;
+    @NonNull
+    private final TermDate termDate;
+    @NonNull
+    private final int[] mergedCells;
+
+    private TermDateSnapshot(long sourceHash, @NonNull TermDate termDate, @NonNull int[] mergedCells) {
+        this.sourceHash = sourceHash;
+        this.termDate = Contract.requireNonNull(termDate);
+        this.mergedCells = Contract.requireNonNull(mergedCells);
+    }
+
+    @NonNull
+    public static TermDateSnapshot create(long sourceHash, @NonNull TermDate termDate) {
+        return new TermDateSnapshot(sourceHash, termDate, expandMergeStates(termDate));
+    }
+
+    /**
+     * Expand merge states of every column, see {@link #getMergedCells()}
+     *
+     * @param termDate Termdate data
+     * @return Merged cells
+     */
+    @NonNull
+    public static int[] expandMergeStates(@NonNull TermDate termDate) {
+        var columnCount = termDate.getColumnCount();
+        var rowCount = termDate.getRowCount();
+        var count = 0;
+        for (var column = 0; column < columnCount; column++) {
+            count += MergeStates.getCount(termDate.getMergeState(column));
+        }
+        var mergedCells = new int[count];
+        var length = 0;
+        for (var column = 0; column < columnCount; column++) {
+            for (var cursor = MergeStates.begin(termDate.getMergeState(column), rowCount);
+                 MergeStates.hasNext(cursor); cursor = MergeStates.next(cursor)) {
+                mergedCells[length++] = (column << Character.SIZE) | MergeStates.get(cursor);
+            }
+        }
+        return mergedCells;
+    }
+
+    public static int getColumn(int mergedCell) {
+        return mergedCell >>> Character.SIZE;
+    }
+
+    /**
+     * @param mergedCell Merged cell
+     * @return Merged row for {@link MergeStates#getFirstRow(char)} and
+     * {@link MergeStates#getLastRow(char)}
+     */
+    public static char getMergedRow(int mergedCell) {
+        return (char) mergedCell;
+    }
+
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    @NonNull
+    public TermDate getTermDate() {
+        return termDate;
+    }
+
+    /**
+     * Get merged cells, each is column in high 16 bits and merged row in low 16 bits, the returned
+     * array must not be modified
+     *
+     * @return Merged cells
+     */
+    @NonNull
+    public int[] getMergedCells() {
+        return mergedCells;
+    }
+
+    @NonNull
+    public ByteArrayAppender encode() {
+        var charCount = 0;
+        for (var view : new String[][][]{termDate.oddView(), termDate.evenView()}) {
+            for (var column : view) {
+                for (var value : column) {
+                    charCount += value.length();
+                }
+            }
+        }
+        var columnCount = termDate.getColumnCount();
+        var rowCount = termDate.getRowCount();
+        var size = HEADER_SIZE + Character.BYTES + Byte.BYTES * 2 + Long.BYTES + Integer.BYTES +
+                Character.BYTES * columnCount + Integer.BYTES * mergedCells.length +
+                Character.BYTES * (columnCount * rowCount * 2 + charCount);
+        var buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putChar((char) VERSION);
+        // Checksum is filled in last
+        buffer.putInt(0);
+        buffer.putChar((char) mergedCells.length);
+        buffer.put((byte) columnCount);
+        buffer.put((byte) rowCount);
+        buffer.putLong(sourceHash);
+        buffer.putInt(termDate.getBeginDate());
+        for (var column = 0; column < columnCount; column++) {
+            buffer.putChar(termDate.getMergeState(column));
+        }
+        for (var mergedCell : mergedCells) {
+            buffer.putInt(mergedCell);
+        }
+        var end = 0;
+        for (var view : new String[][][]{termDate.oddView(), termDate.evenView()}) {
+            for (var column : view) {
+                for (var value : column) {
+                    end += value.length();
+                    buffer.putChar((char) end);
+                }
+            }
+        }
+        for (var view : new String[][][]{termDate.oddView(), termDate.evenView()}) {
+            for (var column : view) {
+                for (var value : column) {
+                    for (var i = 0; i < value.length(); i++) {
+                        buffer.putChar(value.charAt(i));
+                    }
+                }
+            }
+        }
+        var checksum = new CRC32();
+        checksum.update(buffer.array(), HEADER_SIZE, size - HEADER_SIZE);
+        buffer.putInt(HEADER_SIZE - Integer.BYTES, (int) checksum.getValue());
+        var appender = new ByteArrayAppender(size);
+        appender.append(buffer.array(), size);
+        return appender;
+    }
+
+    /**
+     * Decode snapshot, the byte order of buffer will be set to little endian
+     *
+     * @param buffer Buffer containing the whole snapshot
+     * @return Snapshot, or null if buffer is invalid
+     */
+    @Nullable
+    public static TermDateSnapshot decode(@NonNull ByteBuffer buffer) {
+        Contract.requireNonNull(buffer);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getChar() != VERSION) {
+                if (BuildConfig.DEBUG) {
+                    Timber.w("Unknown snapshot format");
+                }
+                return null;
+            }
+            var expectedChecksum = Integer.toUnsignedLong(buffer.getInt());
+            var position = buffer.position();
+            var checksum = new CRC32();
+            checksum.update(buffer);
+            buffer.position(position);
+            if (checksum.getValue() != expectedChecksum) {
+                if (BuildConfig.DEBUG) {
+                    Timber.w("Snapshot checksum mismatch");
+                }
+                return null;
+            }
+            var mergedCellCount = (int) buffer.getChar();
+            var columnCount = Byte.toUnsignedInt(buffer.get());
+            var rowCount = Byte.toUnsignedInt(buffer.get());
+            if (!TermDateData.isValidLayout(columnCount, rowCount) || mergedCellCount >
+                    TermDateData.maximumMergedRow(rowCount) * columnCount) {
+                return null;
+            }
+            var sourceHash = buffer.getLong();
+            var beginDate = buffer.getInt();
+            var mergeStates = new char[columnCount];
+            var maximumMergeState = TermDateData.maximumMergeState(rowCount);
+            for (var column = 0; column < columnCount; column++) {
+                var mergeState = buffer.getChar();
+                if (mergeState > maximumMergeState) {
+                    return null;
+                }
+                mergeStates[column] = mergeState;
+            }
+            var mergedCells = new int[mergedCellCount];
+            for (var i = 0; i < mergedCellCount; i++) {
+                var mergedCell = buffer.getInt();
+                // Checked on raw bytes, MergeStates only accepts valid rows
+                var mergedRow = getMergedRow(mergedCell);
+                var firstRow = mergedRow >>> Byte.SIZE;
+                var lastRow = mergedRow & 0xFF;
+                if (getColumn(mergedCell) >= columnCount || firstRow >= lastRow || lastRow >= rowCount) {
+                    return null;
+                }
+                mergedCells[i] = mergedCell;
+            }
+            var stringCount = columnCount * rowCount * 2;
+            var ends = new char[stringCount];
+            buffer.asCharBuffer().get(ends);
+            buffer.position(buffer.position() + stringCount * Character.BYTES);
+            // Copy all chars at once, then cut strings out of them
+            var chars = new char[ends[stringCount - 1]];
+            buffer.asCharBuffer().get(chars);
+            var oddView = new String[columnCount][rowCount];
+            var evenView = new String[columnCount][rowCount];
+            var start = 0;
+            var index = 0;
+            for (var view : new String[][][]{oddView, evenView}) {
+                for (var column : view) {
+                    for (var row = 0; row < rowCount; row++) {
+                        var end = (int) ends[index++];
+                        if (end < start || end > chars.length ||
+                                end - start > TermDateData.MAX_STRING_LENGTH) {
+                            return null;
+                        }
+                        column[row] = end == start ? "" : new String(chars, start, end - start);
+                        start = end;
+                    }
+                }
+            }
+            return new TermDateSnapshot(sourceHash,
+                    new TermDate(beginDate, oddView, evenView, mergeStates), mergedCells);
+        } catch (BufferUnderflowException e) {
+            if (BuildConfig.DEBUG) {
+                Timber.w(e, "Snapshot truncated");
+            }
+            return null;
+        }
+    }
+}
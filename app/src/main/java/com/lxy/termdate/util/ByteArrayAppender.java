@@ -4,7 +4,9 @@ import androidx.annotation.NonNull;
 
 import com.lxy.termdate.contract.Contract;
 import com.lxy.termdate.contract.Operator;
-import com.lxy.termdate.contract.Value;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 // Simplified ByteArrayOutputStream, all methods are not synchronized
 public class ByteArrayAppender {
@@ -12,7 +14,7 @@ public class ByteArrayAppender {
     private int count;
 
     public ByteArrayAppender(int size) {
-        Contract.requireOperation(new Value<>("size", size), Value.ZERO_I, Operator.GE);
+        Contract.requireOperation("size", size, 0, Operator.GE);
         buffer = new byte[size];
     }
 
@@ -50,6 +52,40 @@ public class ByteArrayAppender {
         count += size;
     }
 
+    /**
+     * Read directly into internal buffer until end of stream or limit bytes are read. If the
+     * remaining capacity already fits the whole stream, the buffer is never grown
+     *
+     * @param stream Input stream
+     * @param limit  Maximum bytes to read
+     * @return Bytes read
+     * @throws IOException If an I/O error occurs
+     */
+    public int readFrom(@NonNull InputStream stream, int limit) throws IOException {
+        Contract.requireNonNull(stream);
+        Contract.requireOperation("limit", limit, 0, Operator.GE);
+        var start = count;
+        var end = start + limit;
+        while (count < end) {
+            if (count == buffer.length) {
+                // Buffer is exactly filled, check end of stream before growing it
+                var value = stream.read();
+                if (value < 0) {
+                    break;
+                }
+                append(value);
+                continue;
+            }
+            // Streams may return fewer bytes than requested before end of stream
+            var result = stream.read(buffer, count, Math.min(buffer.length, end) - count);
+            if (result < 0) {
+                break;
+            }
+            count += result;
+        }
+        return count - start;
+    }
+
     @NonNull
     public byte[] buffer() {
         return buffer;
@@ -3,11 +3,11 @@ package com.lxy.termdate.util;
 import com.lxy.termdate.BuildConfig;
 import com.lxy.termdate.contract.Contract;
 import com.lxy.termdate.contract.Operator;
-import com.lxy.termdate.contract.Value;
 
 import java.time.LocalDate;
 
 public class DateUtil {
+    public static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
     private static final int DAYS_IN_WEEK = 7;
     private static final int MONDAY = 1;
     private static final int SUNDAY = DAYS_IN_WEEK;
@@ -40,11 +40,9 @@ public class DateUtil {
      */
     private static long weekCountInternal(long start, long end) {
         if (BuildConfig.DEBUG) {
-            var startDate = new Value<>("startDate", start);
-            var endDate = new Value<>("endDate", end);
-            Contract.requireOperation(startDate, Value.ZERO_L, Operator.GE);
-            Contract.requireOperation(endDate, Value.ZERO_L, Operator.GE);
-            Contract.requireOperation(startDate, endDate, Operator.LE);
+            Contract.requireOperation("startDate", start, 0L, Operator.GE);
+            Contract.requireOperation("endDate", end, 0L, Operator.GE);
+            Contract.requireOperation("startDate", start, "endDate", end, Operator.LE);
         }
         return 1 + ((end - dayOfWeekFromEpochDay(end)) -
                 (start - dayOfWeekFromEpochDay(start)) +
@@ -52,9 +50,7 @@ public class DateUtil {
     }
 
     public static long now() {
-        final long DIVIDEND = 24 * 60 * 60 * 1000;
-
-        var date = System.currentTimeMillis() / DIVIDEND;
+        var date = System.currentTimeMillis() / MILLIS_PER_DAY;
         if (date < BuildConfig.MIN_DATE) {
             date = BuildConfig.MIN_DATE;
         }
@@ -65,7 +61,11 @@ public class DateUtil {
     }
 
     public static boolean isEven(long start, long end) {
-        return (weekCount(start, end) % 2) != 0;
+        return isEvenWeek(weekCount(start, end));
+    }
+
+    public static boolean isEvenWeek(long weekCount) {
+        return (weekCount % 2) != 0;
     }
 
     public static long weekCount(long start, long end) {
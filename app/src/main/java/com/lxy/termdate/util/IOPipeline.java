@@ -0,0 +1,134 @@
+package com.lxy.termdate.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import timber.log.Timber;
+
+/**
+ * Runs blocking I/O tasks one at a time off the main thread and posts their results back through
+ * the main executor. Submitting a task cancels the previous one: it is not started if still
+ * queued, and its result is dropped if it is already running. Executed tasks are never cancelled.
+ * All methods must be called on the main thread<br>
+ * Pipelines created by {@link #create()} share one I/O thread with the rest of the process, so
+ * tasks of a recreated activity are queued behind those of the old one
+ */
+public class IOPipeline {
+    @NonNull
+    private static final String THREAD_NAME = "TermDate-IO";
+    @NonNull
+    private static final ExecutorService IO_EXECUTOR =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, THREAD_NAME));
+
+    @NonNull
+    private final ExecutorService executor;
+    @NonNull
+    private final Executor mainExecutor;
+    @Nullable
+    private Future<?> pending = null;
+    private int generation = 0;
+
+    public IOPipeline(@NonNull ExecutorService executor, @NonNull Executor mainExecutor) {
+        this.executor = Contract.requireNonNull(executor);
+        this.mainExecutor = Contract.requireNonNull(mainExecutor);
+    }
+
+    @NonNull
+    public static IOPipeline create() {
+        var handler = new Handler(Looper.getMainLooper());
+        return new IOPipeline(IO_EXECUTOR, handler::post);
+    }
+
+    /**
+     * Get the shared I/O thread, for work not tied to any activity
+     *
+     * @return Executor running tasks one at a time
+     */
+    @NonNull
+    public static ExecutorService ioExecutor() {
+        return IO_EXECUTOR;
+    }
+
+    @MainThread
+    public <T> void submit(@NonNull Supplier<T> task, @NonNull Consumer<T> callback) {
+        Contract.requireNonNull(task);
+        Contract.requireNonNull(callback);
+        cancel();
+        var generation = this.generation;
+        pending = executor.submit(() -> {
+            T result;
+            try {
+                result = task.get();
+            } catch (RuntimeException e) {
+                // Rethrow on main thread, as if the task ran there
+                mainExecutor.execute(() -> {
+                    throw e;
+                });
+                return;
+            }
+            mainExecutor.execute(() -> {
+                if (generation != this.generation) {
+                    if (BuildConfig.DEBUG) {
+                        Timber.d("Drop result of cancelled task %d", generation);
+                    }
+                    return;
+                }
+                pending = null;
+                callback.accept(result);
+            });
+        });
+    }
+
+    /**
+     * Queue a task that must run to completion, e.g. writing a file. It is neither cancelled by
+     * later submits nor by {@link #shutdown()}, and doesn't cancel the submitted task
+     *
+     * @param task Task reporting its own result
+     */
+    @MainThread
+    public void execute(@NonNull Runnable task) {
+        Contract.requireNonNull(task);
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Rethrow on main thread, as if the task ran there
+                mainExecutor.execute(() -> {
+                    throw e;
+                });
+            }
+        });
+    }
+
+    @MainThread
+    public void cancel() {
+        generation++;
+        var pending = this.pending;
+        if (pending != null) {
+            // Don't interrupt running task, interrupting closes the FileChannel it may be writing
+            pending.cancel(false);
+            this.pending = null;
+        }
+    }
+
+    @MainThread
+    public void shutdown() {
+        // Running task is allowed to finish, e.g. writing internal termdate file. The executor may
+        // be shared, so it is left running
+        cancel();
+    }
+}
@@ -0,0 +1,49 @@
+package com.lxy.termdate.util;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+
+import timber.log.Timber;
+
+/**
+ * Per-phase startup timing. Phases show up as sections in system traces on any build, durations
+ * and milestones are logged on debug builds only
+ */
+public class StartupTrace {
+    /**
+     * Begin a phase, must be ended on the same thread
+     *
+     * @param phase Name of the phase
+     * @return Begin time to pass to {@link #end(String, long)}
+     */
+    public static long begin(@NonNull String phase) {
+        Trace.beginSection(Contract.requireNonNull(phase));
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static void end(@NonNull String phase, long begin) {
+        var nanos = SystemClock.elapsedRealtimeNanos() - begin;
+        Trace.endSection();
+        if (BuildConfig.DEBUG) {
+            Timber.d("%s took %dus on %s", phase, nanos / 1000, Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Log time elapsed since the process started
+     *
+     * @param milestone Name of the milestone
+     */
+    public static void mark(@NonNull String milestone) {
+        if (BuildConfig.DEBUG) {
+            Timber.d("%s at %dms since process start", milestone,
+                    SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime());
+        }
+    }
+}
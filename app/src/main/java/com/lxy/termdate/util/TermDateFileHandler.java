@@ -1,17 +1,72 @@
 package com.lxy.termdate.util;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.lxy.termdate.data.TermDateSnapshot;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public interface TermDateFileHandler {
+    /**
+     * Map or read the whole file into memory, returning null falls back to
+     * {@link #openInputStream()}
+     *
+     * @return Buffer containing the whole file, or null if the file cannot be loaded
+     * @throws IOException If an I/O error occurs
+     */
+    @WorkerThread
+    @Nullable
+    default ByteBuffer loadByteBuffer() throws IOException {
+        return null;
+    }
+
+    @WorkerThread
     @Nullable
     InputStream openInputStream() throws IOException;
 
-    boolean reallySucceeded();
+    /**
+     * Load snapshot of the file, used instead of decoding the file if it was taken from the same
+     * bytes
+     *
+     * @return Snapshot, or null if there is none
+     */
+    @WorkerThread
+    @Nullable
+    default TermDateSnapshot loadSnapshot() {
+        return null;
+    }
+
+    /**
+     * Whether the file was written by this app, trusted files skip checksum verification
+     *
+     * @return Whether the file is trusted
+     */
+    default boolean isTrusted() {
+        return false;
+    }
+
+    /**
+     * Called after deserialized data is committed, e.g. to persist it. Never called if loading
+     * was cancelled
+     */
+    @MainThread
+    default void succeeded() {
+    }
+
+    /**
+     * Called before {@link #failed()}, e.g. to delete a corrupted file
+     */
+    @WorkerThread
+    default void cleanUp() {
+    }
 
+    @MainThread
     void fileNotFound();
 
+    @MainThread
     void failed();
 }
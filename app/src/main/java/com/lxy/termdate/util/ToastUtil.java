@@ -1,5 +1,7 @@
 package com.lxy.termdate.util;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -9,6 +11,9 @@ import com.lxy.termdate.GlobalContext;
 import com.lxy.termdate.contract.Contract;
 
 public class ToastUtil {
+    @NonNull
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
     public static void toast(@StringRes int resId) {
         toast(GlobalContext.getResourceString(resId));
     }
@@ -24,6 +29,16 @@ public class ToastUtil {
     }
 
     public static void toast(@NonNull String message) {
-        Toast.makeText(GlobalContext.get(), Contract.requireNonNull(message), Toast.LENGTH_SHORT).show();
+        Contract.requireNonNull(message);
+        // Toast requires a looper, post to main thread when called from I/O thread
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            show(message);
+        } else {
+            MAIN_HANDLER.post(() -> show(message));
+        }
+    }
+
+    private static void show(@NonNull String message) {
+        Toast.makeText(GlobalContext.get(), message, Toast.LENGTH_SHORT).show();
     }
 }
\ No newline at end of file
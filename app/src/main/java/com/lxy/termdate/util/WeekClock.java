@@ -0,0 +1,56 @@
+package com.lxy.termdate.util;
+
+import com.lxy.termdate.BuildConfig;
+
+import timber.log.Timber;
+
+/**
+ * Caches today's date and the week count since the begin date, so that rendering reads fields
+ * instead of the wall clock. Call {@link #refresh(long)} when the begin date changes, on midnight
+ * rollover (see {@link #millisUntilRollover()}) and when system time, date or timezone changes
+ */
+public class WeekClock {
+    private static final long INVALID = -1;
+
+    private static long TODAY = INVALID;
+    private static long WEEKS = 0;
+    private static boolean EVEN = false;
+
+    public static void refresh(long beginDate) {
+        var today = DateUtil.now();
+        TODAY = today;
+        if (beginDate >= 0) {
+            WEEKS = DateUtil.weekCount(beginDate, today);
+            EVEN = DateUtil.isEvenWeek(WEEKS);
+        } else {
+            WEEKS = 0;
+            EVEN = false;
+        }
+        if (BuildConfig.DEBUG) {
+            Timber.d("Week clock refreshed, today: %d, weeks: %d, even: %b", TODAY, WEEKS, EVEN);
+        }
+    }
+
+    public static long today() {
+        return TODAY;
+    }
+
+    public static long weeks() {
+        return WEEKS;
+    }
+
+    public static boolean isEven() {
+        return EVEN;
+    }
+
+    /**
+     * Get time until the date changes. Dates are UTC days, see {@link DateUtil#now()}, so the date
+     * and week parity change at UTC midnight rather than local midnight, e.g. at 08:00 in UTC+8
+     *
+     * @return Milliseconds until the next UTC midnight
+     */
+    public static long millisUntilRollover() {
+        // DateUtil.now counts whole days since epoch, so the next rollover is the start of the next day
+        return Math.max(0L, (TODAY + 1) * DateUtil.MILLIS_PER_DAY - System.currentTimeMillis());
+    }
+}
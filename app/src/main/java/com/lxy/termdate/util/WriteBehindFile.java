@@ -0,0 +1,146 @@
+package com.lxy.termdate.util;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.enumset.TwoEnumSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import timber.log.Timber;
+
+/**
+ * Persists data to a file on a background thread. Data is written to a temp file, synced, then
+ * renamed over the file, so the file always holds either the old or the new content even if the
+ * process dies mid-write. Writes queued while an earlier one hasn't started are coalesced, only the
+ * latest data is written
+ */
+public class WriteBehindFile {
+    @NonNull
+    private static final String THREAD_NAME = "TermDate-Writer";
+    @NonNull
+    private static final FileAttribute<?>[] EMPTY_FILE_ATTRIBUTES = new FileAttribute<?>[0];
+    @NonNull
+    private static final Set<StandardOpenOption> OPTIONS_WRITE_AND_CREATE_NEW =
+            new TwoEnumSet<>(StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+    @NonNull
+    private static final CopyOption[] OPTIONS_ATOMIC_REPLACE =
+            new CopyOption[]{StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING};
+
+    @NonNull
+    private final Path path;
+    @NonNull
+    private final Path tempPath;
+    @NonNull
+    private final Executor executor;
+    @NonNull
+    private final Consumer<ByteArrayAppender> writtenHandler;
+    @NonNull
+    private final Consumer<IOException> errorHandler;
+    // Latest data not yet picked up by the writer thread
+    @NonNull
+    private final AtomicReference<ByteArrayAppender> pending = new AtomicReference<>();
+
+    /**
+     * @param path         File to write
+     * @param tempPath     Temp file in the same directory as path, so that it can be renamed
+     *                     atomically
+     * @param executor       Executor running writes, must run tasks one at a time
+     * @param writtenHandler Called on writer thread with data written by a queued write
+     * @param errorHandler   Called on writer thread when a write fails
+     */
+    public WriteBehindFile(@NonNull Path path, @NonNull Path tempPath, @NonNull Executor executor,
+                           @NonNull Consumer<ByteArrayAppender> writtenHandler,
+                           @NonNull Consumer<IOException> errorHandler) {
+        this.path = Contract.requireNonNull(path);
+        this.tempPath = Contract.requireNonNull(tempPath);
+        this.executor = Contract.requireNonNull(executor);
+        this.writtenHandler = Contract.requireNonNull(writtenHandler);
+        this.errorHandler = Contract.requireNonNull(errorHandler);
+    }
+
+    @NonNull
+    public static WriteBehindFile create(@NonNull Path path, @NonNull Path tempPath,
+                                         @NonNull Consumer<ByteArrayAppender> writtenHandler,
+                                         @NonNull Consumer<IOException> errorHandler) {
+        return new WriteBehindFile(path, tempPath,
+                Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, THREAD_NAME)),
+                writtenHandler, errorHandler);
+    }
+
+    /**
+     * Queue data to be written, never blocks
+     *
+     * @param data Data to write, must not be modified afterwards
+     */
+    @AnyThread
+    public void write(@NonNull ByteArrayAppender data) {
+        Contract.requireNonNull(data);
+        // Only schedule a flush if none is queued, a queued flush picks up the latest data
+        if (pending.getAndSet(data) == null) {
+            executor.execute(this::flush);
+        } else if (BuildConfig.DEBUG) {
+            Timber.d("Coalesce write of %s", path);
+        }
+    }
+
+    @WorkerThread
+    private void flush() {
+        var data = pending.getAndSet(null);
+        if (data == null) {
+            return;
+        }
+        try {
+            writeNow(data);
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) {
+                Timber.e(e, "Write %s failed", path);
+            }
+            errorHandler.accept(e);
+            return;
+        }
+        writtenHandler.accept(data);
+    }
+
+    /**
+     * Replace file atomically on current thread
+     *
+     * @param data Data to write
+     * @throws IOException If an I/O error occurs, file is left unchanged
+     */
+    @WorkerThread
+    public void writeNow(@NonNull ByteArrayAppender data) throws IOException {
+        Contract.requireNonNull(data);
+        var tempPath = this.tempPath;
+        // Left over if a previous write was interrupted
+        Files.deleteIfExists(tempPath);
+        try (var channel = FileChannel.open(tempPath, OPTIONS_WRITE_AND_CREATE_NEW, EMPTY_FILE_ATTRIBUTES)) {
+            var buffer = ByteBuffer.wrap(data.buffer(), 0, data.size());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Content must reach the disk before rename, otherwise a crash may leave an empty file
+            channel.force(false);
+        }
+        Files.move(tempPath, path, OPTIONS_ATOMIC_REPLACE);
+        if (BuildConfig.DEBUG) {
+            Timber.d("Wrote %d bytes to %s", data.size(), path);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.lxy.termdate.widget;
+
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import androidx.annotation.NonNull;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.contract.Contract;
+
+import java.util.HashMap;
+
+import timber.log.Timber;
+
+/**
+ * Line-broken layouts of strings for one width and text size, each string is broken once no matter
+ * how many cells show it. Layouts are looked up in passes, see {@link #beginPass(int)} and
+ * {@link #endPass()}: a pass keeps the layouts it looked up and drops all others, so layouts of
+ * replaced data are dropped by the next pass while a pass over the same strings breaks nothing.
+ * Lookups between passes, e.g. for a few changed cells, add layouts without dropping any, so they
+ * should be followed by a pass at the same width, see {@link #beginPass()}
+ */
+public class TextLayoutCache {
+    private static final int INVALID_WIDTH = -1;
+
+    private static class Entry {
+        @NonNull
+        final StaticLayout layout;
+        // Last pass looking this up
+        int pass;
+
+        Entry(@NonNull StaticLayout layout, int pass) {
+            this.layout = layout;
+            this.pass = pass;
+        }
+    }
+
+    @NonNull
+    private final TextPaint paint;
+    @NonNull
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private int width = INVALID_WIDTH;
+    private float textSize = Float.NaN;
+    private int pass = 0;
+    private int created = 0;
+
+    /**
+     * @param paint Paint to lay out with, shared with the caller, a different text size drops all
+     *              layouts
+     */
+    public TextLayoutCache(@NonNull TextPaint paint) {
+        this.paint = Contract.requireNonNull(paint);
+    }
+
+    /**
+     * Begin a pass, dropping all layouts if width or text size changed
+     *
+     * @param width Width to lay out text in
+     */
+    public void beginPass(int width) {
+        width = Math.max(width, 1);
+        var textSize = paint.getTextSize();
+        if (width != this.width || textSize != this.textSize) {
+            if (BuildConfig.DEBUG && this.width != INVALID_WIDTH) {
+                Timber.d("Drop text layouts, width: %dpx -> %dpx", this.width, width);
+            }
+            this.width = width;
+            this.textSize = textSize;
+            entries.clear();
+        }
+        pass++;
+        created = 0;
+    }
+
+    /**
+     * Begin a pass at the current width, e.g. to drop layouts replaced by lookups between passes.
+     * Layouts created keep counting from the last {@link #beginPass(int)}
+     */
+    public void beginPass() {
+        if (BuildConfig.DEBUG) {
+            Contract.require(width != INVALID_WIDTH, "No pass begun");
+        }
+        pass++;
+    }
+
+    @NonNull
+    public StaticLayout get(@NonNull String text) {
+        Contract.requireNonNull(text);
+        if (BuildConfig.DEBUG) {
+            Contract.require(width != INVALID_WIDTH, "No pass begun");
+        }
+        var entry = entries.get(text);
+        if (entry == null) {
+            var layout = StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                    .setAlignment(Layout.Alignment.ALIGN_CENTER)
+                    .setIncludePad(false)
+                    .build();
+            created++;
+            entry = new Entry(layout, pass);
+            entries.put(text, entry);
+        } else {
+            entry.pass = pass;
+        }
+        return entry.layout;
+    }
+
+    /**
+     * Get number of layouts created since the last {@link #beginPass(int)}
+     *
+     * @return Number of layouts
+     */
+    public int created() {
+        return created;
+    }
+
+    /**
+     * @return Number of layouts cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * End a pass, dropping layouts it didn't look up
+     *
+     * @return Number of layouts created since the last {@link #beginPass(int)}
+     */
+    public int endPass() {
+        var pass = this.pass;
+        entries.values().removeIf(entry -> entry.pass != pass);
+        return created;
+    }
+}
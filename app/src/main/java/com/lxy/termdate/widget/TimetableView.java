@@ -0,0 +1,772 @@
+package com.lxy.termdate.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.lxy.termdate.BuildConfig;
+import com.lxy.termdate.R;
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.contract.Operator;
+import com.lxy.termdate.data.MergeStates;
+import com.lxy.termdate.data.TermDateData;
+import com.lxy.termdate.data.TermDateSnapshot;
+
+import java.util.Arrays;
+
+import timber.log.Timber;
+
+/**
+ * Draws the timetable: a header row, a header column and as many rows and columns of cells as
+ * termdate data has, cells of a column may be merged across rows. Geometry
+ * is computed by {@link #onMeasure(int, int)} only when width or content changes, text is broken
+ * into lines only when width, text size or the strings change, see {@link TextLayoutCache}.
+ * {@link #onDraw(Canvas)} replays them and allocates nothing. Text layouts outlive the view when
+ * the activity is recreated for a configuration change, see {@link #retainState()}
+ */
+public class TimetableView extends View {
+    public interface OnCellClickListener {
+        /**
+         * @param column Column, the header column is 0
+         * @param row    Row of termdate data, the first row if the cell is merged
+         */
+        void onCellClick(int column, int row);
+    }
+
+    /**
+     * Text layouts and measured header width of a view, adopted by the view replacing it, see
+     * {@link #restoreState(RetainedState)}
+     */
+    public static class RetainedState {
+        // Shared with layouts of both caches, which draw with it
+        @NonNull
+        private final TextPaint textPaint;
+        @NonNull
+        private final TextLayoutCache headerLayouts;
+        @NonNull
+        private final TextLayoutCache cellLayouts;
+        @NonNull
+        private final String[] columnHeader;
+        @NonNull
+        private final String[] rowHeader;
+        private final int headerTextWidth;
+        private final float headerTextSize;
+        private final int headerRowCount;
+
+        private RetainedState(@NonNull TimetableView view) {
+            textPaint = view.textPaint;
+            headerLayouts = view.headerLayouts;
+            cellLayouts = view.cellLayouts;
+            columnHeader = view.columnHeader;
+            rowHeader = view.rowHeader;
+            headerTextWidth = view.headerTextWidth;
+            headerTextSize = view.headerTextSize;
+            headerRowCount = view.headerRowCount;
+        }
+    }
+
+    // Grid including header row and header column
+    // Arrays are sized for the largest layout, see columnCount and rowCount
+    private static final int MAX_COLUMN_COUNT = TermDateData.MAX_COLUMN_COUNT + 1;
+    private static final int MAX_ROW_COUNT = TermDateData.MAX_ROW_COUNT + 1;
+    private static final int MAXIMUM_MERGED_CELL_COUNT =
+            TermDateData.maximumMergedRow(TermDateData.MAX_ROW_COUNT) * TermDateData.MAX_COLUMN_COUNT;
+    // Vertical dividers, plus one horizontal divider per column above every row and below the last
+    private static final int MAXIMUM_DIVIDER_COUNT =
+            (MAX_COLUMN_COUNT + 1) + MAX_COLUMN_COUNT * (MAX_ROW_COUNT + 1);
+    private static final int INVALID_WIDTH = -1;
+    private static final int ALL_ROWS = (1 << TermDateData.MAX_ROW_COUNT) - 1;
+    @NonNull
+    private static final int[] EMPTY_MERGED_CELLS = new int[0];
+
+    // Replaced along with both caches by restoreState
+    @NonNull
+    private TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    @NonNull
+    private final Paint dividerPaint = new Paint();
+    @NonNull
+    private TextLayoutCache headerLayouts = new TextLayoutCache(textPaint);
+    @NonNull
+    private TextLayoutCache cellLayouts = new TextLayoutCache(textPaint);
+    private final int dividerWidth;
+    private final int padding;
+
+    // Content, data cells are indexed by [column][row] without headers
+    @NonNull
+    private String[] columnHeader = emptyStrings(MAX_COLUMN_COUNT);
+    @NonNull
+    private String[] rowHeader = emptyStrings(TermDateData.MAX_ROW_COUNT);
+    @NonNull
+    private String[][] cells = TermDateData.activeView();
+    // Grid including header row and header column, following the layout of cells
+    private int columnCount = cells.length + 1;
+    private int rowCount = cells[0].length + 1;
+    // Not shown, but laid out along with cells
+    @Nullable
+    private String[][] alternateCells = null;
+    // Widest header on one line, measured for current headers of headerRowCount rows at headerTextSize
+    private int headerTextWidth = INVALID_WIDTH;
+    private float headerTextSize = Float.NaN;
+    private int headerRowCount = 0;
+    // Rows spanned by each data cell, 0 if covered by a merged cell above
+    @NonNull
+    private final int[][] rowSpans = new int[TermDateData.MAX_COLUMN_COUNT][TermDateData.MAX_ROW_COUNT];
+    @NonNull
+    private final int[][] newRowSpans = new int[TermDateData.MAX_COLUMN_COUNT][TermDateData.MAX_ROW_COUNT];
+    // Rows of each data column changed since geometry was computed, bit i is row i of termdate data
+    @NonNull
+    private final int[] dirtyRows = new int[TermDateData.MAX_COLUMN_COUNT];
+    private boolean rowSpansChanged = false;
+
+    // Geometry of the whole grid, edges are where the divider before a column or row begins
+    @NonNull
+    private final int[] columnEdges = new int[MAX_COLUMN_COUNT + 1];
+    @NonNull
+    private final int[] rowEdges = new int[MAX_ROW_COUNT + 1];
+    @NonNull
+    private final int[] previousRowEdges = new int[MAX_ROW_COUNT + 1];
+    // Heights from unmerged cells only, and with merged cells fitted in
+    @NonNull
+    private final int[] baseRowHeights = new int[MAX_ROW_COUNT];
+    @NonNull
+    private final int[] rowHeights = new int[MAX_ROW_COUNT];
+    private int minRowHeight = 0;
+    // Indexed by [column][row] of the whole grid, null for cells covered by a merged cell
+    @NonNull
+    private final StaticLayout[][] layouts = new StaticLayout[MAX_COLUMN_COUNT][MAX_ROW_COUNT];
+    @NonNull
+    private final float[][] textLefts = new float[MAX_COLUMN_COUNT][MAX_ROW_COUNT];
+    @NonNull
+    private final float[][] textTops = new float[MAX_COLUMN_COUNT][MAX_ROW_COUNT];
+    // Left, top, right and bottom of every divider
+    @NonNull
+    private final float[] dividers = new float[MAXIMUM_DIVIDER_COUNT * 4];
+    private int dividerCount = 0;
+    private int tableHeight = 0;
+    // Width geometry was computed for
+    private int layoutWidth = INVALID_WIDTH;
+
+    @Nullable
+    private OnCellClickListener onCellClickListener = null;
+    // Squared distance a tap may move before it is a drag
+    private final int touchSlopSquare;
+    private float downX = 0;
+    private float downY = 0;
+    // Whether the current gesture can still be a tap
+    private boolean tapping = false;
+
+    public TimetableView(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public TimetableView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        var resources = context.getResources();
+        dividerWidth = resources.getDimensionPixelSize(R.dimen.divider_width);
+        padding = resources.getDimensionPixelSize(R.dimen.padding);
+        var touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        touchSlopSquare = touchSlop * touchSlop;
+        textPaint.setTextSize(resources.getDimension(R.dimen.font_size));
+        textPaint.setColor(context.getColor(R.color.text_color));
+        dividerPaint.setColor(context.getColor(R.color.divider_color));
+        dividerPaint.setStyle(Paint.Style.FILL);
+        fillRowSpans(rowSpans, EMPTY_MERGED_CELLS);
+        if (BuildConfig.DEBUG) {
+            Timber.d("Divider width: %dpx", dividerWidth);
+            Timber.d("Padding: %dpx", padding);
+        }
+    }
+
+    @NonNull
+    private static String[] emptyStrings(int length) {
+        var strings = new String[length];
+        Arrays.fill(strings, "");
+        return strings;
+    }
+
+    /**
+     * @param columnHeader Header of every column, including the header column
+     * @param rowHeader    Header of every row of termdate data
+     */
+    public void setHeaders(@NonNull String[] columnHeader, @NonNull String[] rowHeader) {
+        Contract.requireOperation("columnHeaderLength", Contract.requireNonNull(columnHeader).length,
+                "columnCount", MAX_COLUMN_COUNT, Operator.EQ);
+        Contract.requireOperation("rowHeaderLength", Contract.requireNonNull(rowHeader).length,
+                "rowCount", TermDateData.MAX_ROW_COUNT, Operator.EQ);
+        if (columnHeader != this.columnHeader || rowHeader != this.rowHeader) {
+            this.columnHeader = columnHeader;
+            this.rowHeader = rowHeader;
+            headerTextWidth = INVALID_WIDTH;
+        }
+        invalidateGeometry();
+    }
+
+    /**
+     * Hand text layouts over to the view replacing this one, e.g. before the activity is recreated
+     * for a configuration change. This view must not be drawn afterwards
+     *
+     * @return State to pass to {@link #restoreState(RetainedState)}
+     */
+    @NonNull
+    public RetainedState retainState() {
+        return new RetainedState(this);
+    }
+
+    /**
+     * Adopt text layouts of a replaced view, must be called before anything is set. Layouts are
+     * reused as long as the width and text size they were made for still match, so that a new
+     * theme reuses all of them, and a new orientation still reuses those of the header column.
+     * Density and font scale only matter through text size
+     *
+     * @param state State returned by {@link #retainState()}
+     */
+    public void restoreState(@NonNull RetainedState state) {
+        Contract.requireNonNull(state);
+        // Colors and text size of this view win, caches drop layouts made for another text size
+        state.textPaint.set(textPaint);
+        textPaint = state.textPaint;
+        headerLayouts = state.headerLayouts;
+        cellLayouts = state.cellLayouts;
+        columnHeader = state.columnHeader;
+        rowHeader = state.rowHeader;
+        headerTextWidth = state.headerTextWidth;
+        headerTextSize = state.headerTextSize;
+        headerRowCount = state.headerRowCount;
+        invalidateGeometry();
+    }
+
+    /**
+     * Set cells to show, and cells likely to be shown next, e.g. the view of the other week
+     * parity. Text of both is laid out and cached, so that switching between them only moves
+     * cells around
+     *
+     * @param cells          Cells indexed by [column][row], must not be modified afterwards, e.g.
+     *                       {@link TermDateData#activeView()}
+     * @param alternateCells Cells likely to be shown next, in the same layout
+     */
+    public void setCells(@NonNull String[][] cells, @Nullable String[][] alternateCells) {
+        Contract.requireNonNull(cells);
+        if (cells == this.cells && alternateCells == this.alternateCells) {
+            return;
+        }
+        setLayout(cells);
+        this.cells = cells;
+        this.alternateCells = alternateCells;
+        invalidateGeometry();
+    }
+
+    /**
+     * Follow the layout of cells
+     *
+     * @return Whether the layout changed
+     */
+    private boolean setLayout(@NonNull String[][] cells) {
+        var columnCount = cells.length + 1;
+        var rowCount = cells[0].length + 1;
+        if (BuildConfig.DEBUG) {
+            Contract.require(TermDateData.isValidLayout(columnCount - 1, rowCount - 1),
+                    "Invalid layout");
+        }
+        if (columnCount == this.columnCount && rowCount == this.rowCount) {
+            return false;
+        }
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        return true;
+    }
+
+    /**
+     * Replace cells, laying out again only cells marked as changed
+     *
+     * @param cells          See {@link #setCells(String[][], String[][])}
+     * @param alternateCells See {@link #setCells(String[][], String[][])}
+     * @param changedRows    Rows changed in each column since the last update, bit i is row i, see
+     *                       {@link TermDateData#takeChanges(int[])}
+     * @param mergedCells    New merged cells, or null if unchanged
+     */
+    public void updateCells(@NonNull String[][] cells, @Nullable String[][] alternateCells,
+                            @NonNull int[] changedRows, @Nullable int[] mergedCells) {
+        Contract.requireNonNull(cells);
+        Contract.requireOperation("changedRowsLength", Contract.requireNonNull(changedRows).length,
+                "maxColumnCount", TermDateData.MAX_COLUMN_COUNT, Operator.EQ);
+        var layoutChanged = setLayout(cells);
+        this.cells = cells;
+        this.alternateCells = alternateCells;
+        if (mergedCells != null) {
+            updateRowSpans(mergedCells);
+        }
+        if (layoutChanged) {
+            // Every edge moves, nothing to gain from tracking cells
+            invalidateGeometry();
+            clearChanges();
+            return;
+        }
+        for (var column = 0; column < TermDateData.MAX_COLUMN_COUNT; column++) {
+            dirtyRows[column] |= changedRows[column];
+        }
+        applyChanges();
+    }
+
+    /**
+     * @param mergedCells Merged cells, see {@link TermDateSnapshot#getMergedCells()}
+     */
+    public void setMergedCells(@NonNull int[] mergedCells) {
+        updateRowSpans(mergedCells);
+        invalidateGeometry();
+    }
+
+    private void updateRowSpans(@NonNull int[] mergedCells) {
+        Contract.requireOperation("mergedCellCount", Contract.requireNonNull(mergedCells).length,
+                MAXIMUM_MERGED_CELL_COUNT, Operator.LE);
+        var newRowSpans = this.newRowSpans;
+        fillRowSpans(newRowSpans, mergedCells);
+        // Only columns with different spans are laid out again
+        for (var column = 0; column < TermDateData.MAX_COLUMN_COUNT; column++) {
+            if (!Arrays.equals(newRowSpans[column], rowSpans[column])) {
+                System.arraycopy(newRowSpans[column], 0, rowSpans[column], 0, TermDateData.MAX_ROW_COUNT);
+                dirtyRows[column] = ALL_ROWS;
+                rowSpansChanged = true;
+            }
+        }
+    }
+
+    private static void fillRowSpans(@NonNull int[][] rowSpans, @NonNull int[] mergedCells) {
+        for (var spans : rowSpans) {
+            Arrays.fill(spans, 1);
+        }
+        for (var mergedCell : mergedCells) {
+            var spans = rowSpans[TermDateSnapshot.getColumn(mergedCell)];
+            var mergedRow = TermDateSnapshot.getMergedRow(mergedCell);
+            var firstRow = MergeStates.getFirstRow(mergedRow);
+            var lastRow = MergeStates.getLastRow(mergedRow);
+            spans[firstRow] = lastRow - firstRow + 1;
+            Arrays.fill(spans, firstRow + 1, lastRow + 1, 0);
+        }
+    }
+
+    public void setOnCellClickListener(@Nullable OnCellClickListener listener) {
+        onCellClickListener = listener;
+    }
+
+    /**
+     * @return Number of cell strings laid out since geometry was last computed from scratch
+     */
+    @VisibleForTesting
+    int createdCellLayouts() {
+        return cellLayouts.created();
+    }
+
+    /**
+     * @return Number of cell layouts cached
+     */
+    @VisibleForTesting
+    int cachedCellLayouts() {
+        return cellLayouts.size();
+    }
+
+    private void invalidateGeometry() {
+        layoutWidth = INVALID_WIDTH;
+        requestLayout();
+        invalidate();
+    }
+
+    private void clearChanges() {
+        Arrays.fill(dirtyRows, 0);
+        rowSpansChanged = false;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        var width = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED ?
+                getSuggestedMinimumWidth() : MeasureSpec.getSize(widthMeasureSpec);
+        if (width != layoutWidth) {
+            computeGeometry(width);
+        }
+        setMeasuredDimension(width, resolveSize(tableHeight, heightMeasureSpec));
+    }
+
+    private void computeGeometry(int width) {
+        Trace.beginSection("TimetableView.computeGeometry");
+        var begin = BuildConfig.DEBUG ? SystemClock.elapsedRealtimeNanos() : 0;
+        var dividerWidth = this.dividerWidth;
+        var padding = this.padding;
+
+        // Header column fits the widest header on one line, data columns share the rest
+        var headerColumnWidth = measureHeaders() + padding * 2;
+        var restWidth = width - headerColumnWidth - dividerWidth * (columnCount + 1);
+        var columnWidth = Math.max(restWidth / (columnCount - 1), padding * 2 + 1);
+        columnEdges[0] = 0;
+        columnEdges[1] = headerColumnWidth + dividerWidth;
+        for (var column = 1; column < columnCount; column++) {
+            columnEdges[column + 1] = columnEdges[column] + columnWidth + dividerWidth;
+        }
+
+        minRowHeight = textPaint.getFontMetricsInt(null) + padding * 2;
+        headerLayouts.beginPass(headerColumnWidth - padding * 2);
+        cellLayouts.beginPass(columnWidth - padding * 2);
+        for (var column = 0; column < columnCount; column++) {
+            for (var row = 0; row < rowCount; row++) {
+                layoutCell(column, row);
+            }
+        }
+        var created = headerLayouts.endPass() + cellLayouts.endPass();
+        for (var row = 0; row < rowCount; row++) {
+            computeBaseRowHeight(row);
+        }
+        computeRowEdges();
+        computeTextPositions();
+        computeDividers();
+        layoutWidth = width;
+        clearChanges();
+        Trace.endSection();
+        if (BuildConfig.DEBUG) {
+            Timber.d("Table geometry computed in %dus, width: %dpx, column width: %dpx, " +
+                            "%d strings laid out", (SystemClock.elapsedRealtimeNanos() - begin) / 1000,
+                    width, columnWidth, created);
+        }
+    }
+
+    /**
+     * Lay out again only cells marked as changed, and redraw only them unless rows moved
+     */
+    private void applyChanges() {
+        if (layoutWidth == INVALID_WIDTH) {
+            // Geometry is computed from scratch anyway
+            clearChanges();
+            return;
+        }
+        // Only rows and columns of current layout
+        var rowMask = (1 << (rowCount - 1)) - 1;
+        var changedRows = 0;
+        for (var column = 0; column < TermDateData.MAX_COLUMN_COUNT; column++) {
+            dirtyRows[column] = column < columnCount - 1 ? dirtyRows[column] & rowMask : 0;
+            changedRows |= dirtyRows[column];
+        }
+        if (changedRows == 0) {
+            return;
+        }
+        Trace.beginSection("TimetableView.applyChanges");
+        var begin = BuildConfig.DEBUG ? SystemClock.elapsedRealtimeNanos() : 0;
+        var created = cellLayouts.created();
+        var cellCount = 0;
+        for (var column = 1; column < columnCount; column++) {
+            for (var rows = dirtyRows[column - 1]; rows != 0; rows &= rows - 1) {
+                layoutCell(column, Integer.numberOfTrailingZeros(rows) + 1);
+                cellCount++;
+            }
+        }
+        retainCellLayouts();
+        for (var rows = changedRows; rows != 0; rows &= rows - 1) {
+            computeBaseRowHeight(Integer.numberOfTrailingZeros(rows) + 1);
+        }
+        var tableHeight = this.tableHeight;
+        System.arraycopy(rowEdges, 0, previousRowEdges, 0, rowCount + 1);
+        computeRowEdges();
+        var moved = rowSpansChanged || !Arrays.equals(rowEdges, previousRowEdges);
+        if (moved) {
+            // Rows moved or cells merged differently, everything below may change
+            computeTextPositions();
+            computeDividers();
+            if (tableHeight != this.tableHeight) {
+                requestLayout();
+            }
+            invalidate();
+        } else {
+            for (var column = 1; column < columnCount; column++) {
+                for (var rows = dirtyRows[column - 1]; rows != 0; rows &= rows - 1) {
+                    var row = Integer.numberOfTrailingZeros(rows) + 1;
+                    computeTextPosition(column, row);
+                    invalidateCell(column, row);
+                }
+            }
+        }
+        clearChanges();
+        Trace.endSection();
+        if (BuildConfig.DEBUG) {
+            Timber.d("Table changes applied in %dus, %d cells changed, %d strings laid out, " +
+                            "rows moved: %b", (SystemClock.elapsedRealtimeNanos() - begin) / 1000,
+                    cellCount, cellLayouts.created() - created, moved);
+        }
+    }
+
+    /**
+     * Drop cell layouts of strings replaced since the last pass, only looking up cached layouts
+     */
+    private void retainCellLayouts() {
+        cellLayouts.beginPass();
+        for (var column = 1; column < columnCount; column++) {
+            for (var row = 0; row < rowCount; row++) {
+                layoutCell(column, row);
+            }
+        }
+        cellLayouts.endPass();
+    }
+
+    private void layoutCell(int column, int row) {
+        if (rowSpan(column, row) == 0) {
+            layouts[column][row] = null;
+            return;
+        }
+        if (column == 0) {
+            layouts[column][row] = headerLayouts.get(text(column, row));
+            return;
+        }
+        layouts[column][row] = cellLayouts.get(text(column, row));
+        // Laid out but not shown, so that switching to alternate cells breaks no text
+        var alternateCells = this.alternateCells;
+        if (row > 0 && alternateCells != null) {
+            cellLayouts.get(alternateCells[column - 1][row - 1]);
+        }
+    }
+
+    /**
+     * Rows are as high as their highest unmerged cell
+     */
+    private void computeBaseRowHeight(int row) {
+        var height = minRowHeight;
+        for (var column = 0; column < columnCount; column++) {
+            if (rowSpan(column, row) == 1) {
+                height = Math.max(height,
+                        Contract.requireNonNull(layouts[column][row]).getHeight() + padding * 2);
+            }
+        }
+        baseRowHeights[row] = height;
+    }
+
+    private void computeRowEdges() {
+        var dividerWidth = this.dividerWidth;
+        var rowHeights = this.rowHeights;
+        System.arraycopy(baseRowHeights, 0, rowHeights, 0, rowCount);
+        // Merged cells taller than the rows they span grow their last row
+        for (var column = 1; column < columnCount; column++) {
+            for (var row = 1; row < rowCount; row++) {
+                var span = rowSpan(column, row);
+                if (span <= 1) {
+                    continue;
+                }
+                var lastRow = row + span - 1;
+                var spannedHeight = dividerWidth * (span - 1);
+                for (var i = row; i <= lastRow; i++) {
+                    spannedHeight += rowHeights[i];
+                }
+                var height = Contract.requireNonNull(layouts[column][row]).getHeight() + padding * 2;
+                if (height > spannedHeight) {
+                    rowHeights[lastRow] += height - spannedHeight;
+                }
+            }
+        }
+        var edge = 0;
+        for (var row = 0; row < rowCount; row++) {
+            rowEdges[row] = edge;
+            edge += dividerWidth + rowHeights[row];
+        }
+        rowEdges[rowCount] = edge;
+        tableHeight = edge + dividerWidth;
+    }
+
+    private void computeTextPositions() {
+        for (var column = 0; column < columnCount; column++) {
+            for (var row = 0; row < rowCount; row++) {
+                computeTextPosition(column, row);
+            }
+        }
+    }
+
+    /**
+     * Text is centered in its cell, vertically across merged rows
+     */
+    private void computeTextPosition(int column, int row) {
+        var layout = layouts[column][row];
+        if (layout == null) {
+            return;
+        }
+        var top = rowEdges[row] + dividerWidth;
+        var bottom = rowEdges[row + rowSpan(column, row)];
+        textLefts[column][row] = columnEdges[column] + dividerWidth + padding;
+        textTops[column][row] = top + (bottom - top - layout.getHeight()) / 2f;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void invalidateCell(int column, int row) {
+        var span = rowSpan(column, row);
+        if (span == 0) {
+            // Covered text is not drawn
+            return;
+        }
+        // Hardware accelerated views redraw as a whole, the rect still limits software rendering
+        invalidate(columnEdges[column] + dividerWidth, rowEdges[row] + dividerWidth,
+                columnEdges[column + 1], rowEdges[row + span]);
+    }
+
+    /**
+     * Horizontal dividers are left out inside merged cells
+     */
+    private void computeDividers() {
+        var dividerWidth = this.dividerWidth;
+        var count = 0;
+        for (var column = 0; column <= columnCount; column++) {
+            count = addDivider(count, columnEdges[column], 0, columnEdges[column] + dividerWidth, tableHeight);
+        }
+        for (var row = 0; row <= rowCount; row++) {
+            var top = rowEdges[row];
+            for (var column = 0; column < columnCount; column++) {
+                if (row < rowCount && rowSpan(column, row) == 0) {
+                    continue;
+                }
+                count = addDivider(count, columnEdges[column] + dividerWidth, top,
+                        columnEdges[column + 1], top + dividerWidth);
+            }
+        }
+        dividerCount = count;
+    }
+
+    private int addDivider(int count, float left, float top, float right, float bottom) {
+        var dividers = this.dividers;
+        var offset = count * 4;
+        dividers[offset] = left;
+        dividers[offset + 1] = top;
+        dividers[offset + 2] = right;
+        dividers[offset + 3] = bottom;
+        return count + 1;
+    }
+
+    private int measureHeaders() {
+        var textSize = textPaint.getTextSize();
+        var rowCount = this.rowCount;
+        if (headerTextWidth == INVALID_WIDTH || textSize != headerTextSize
+                || rowCount != headerRowCount) {
+            // Only headers of shown rows, the rest are never drawn
+            var width = desiredWidth(columnHeader[0]);
+            for (var row = 1; row < rowCount; row++) {
+                width = Math.max(width, desiredWidth(rowHeader[row - 1]));
+            }
+            headerTextWidth = width;
+            headerTextSize = textSize;
+            headerRowCount = rowCount;
+        }
+        return headerTextWidth;
+    }
+
+    private int desiredWidth(@NonNull String text) {
+        return (int) Math.ceil(Layout.getDesiredWidth(text, textPaint));
+    }
+
+    /**
+     * @return Rows spanned by a cell of the whole grid, 0 if covered by a merged cell above
+     */
+    private int rowSpan(int column, int row) {
+        return column == 0 || row == 0 ? 1 : rowSpans[column - 1][row - 1];
+    }
+
+    @NonNull
+    private String text(int column, int row) {
+        if (row == 0) {
+            return columnHeader[column];
+        }
+        if (column == 0) {
+            return rowHeader[row - 1];
+        }
+        return cells[column - 1][row - 1];
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        Trace.beginSection("TimetableView.onDraw");
+        var dividers = this.dividers;
+        var dividerPaint = this.dividerPaint;
+        for (var i = 0; i < dividerCount * 4; i += 4) {
+            canvas.drawRect(dividers[i], dividers[i + 1], dividers[i + 2], dividers[i + 3], dividerPaint);
+        }
+        for (var column = 0; column < columnCount; column++) {
+            var columnLayouts = layouts[column];
+            for (var row = 0; row < rowCount; row++) {
+                var layout = columnLayouts[row];
+                if (layout == null) {
+                    continue;
+                }
+                var saveCount = canvas.save();
+                canvas.translate(textLefts[column][row], textTops[column][row]);
+                layout.draw(canvas);
+                canvas.restoreToCount(saveCount);
+            }
+        }
+        Trace.endSection();
+    }
+
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN -> {
+                // Scrolling parents still intercept moves
+                downX = event.getX();
+                downY = event.getY();
+                tapping = true;
+                return true;
+            }
+            case MotionEvent.ACTION_MOVE -> {
+                tapping &= isWithinTouchSlop(event);
+                return true;
+            }
+            case MotionEvent.ACTION_UP -> {
+                // Neither drags nor long presses click, like the table this view replaced
+                var tap = tapping && isWithinTouchSlop(event) &&
+                        event.getEventTime() - event.getDownTime() < ViewConfiguration.getLongPressTimeout();
+                tapping = false;
+                if (tap) {
+                    performClick();
+                    dispatchCellClick(findEdge(columnEdges, columnCount, event.getX()),
+                            findEdge(rowEdges, rowCount, event.getY()));
+                }
+                return true;
+            }
+            case MotionEvent.ACTION_CANCEL -> tapping = false;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private boolean isWithinTouchSlop(@NonNull MotionEvent event) {
+        var dx = event.getX() - downX;
+        var dy = event.getY() - downY;
+        return dx * dx + dy * dy <= touchSlopSquare;
+    }
+
+    /**
+     * @return Index of the column or row containing position, or -1 if outside the grid
+     */
+    private static int findEdge(@NonNull int[] edges, int count, float position) {
+        if (position < edges[0]) {
+            return -1;
+        }
+        for (var i = 0; i < count; i++) {
+            if (position < edges[i + 1]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void dispatchCellClick(int column, int row) {
+        var listener = onCellClickListener;
+        // Header row is not clickable
+        if (listener == null || column < 0 || row <= 0 || layoutWidth == INVALID_WIDTH) {
+            return;
+        }
+        while (rowSpan(column, row) == 0) {
+            row--;
+        }
+        listener.onCellClick(column, row - 1);
+    }
+}
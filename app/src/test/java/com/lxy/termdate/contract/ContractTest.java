@@ -0,0 +1,65 @@
+package com.lxy.termdate.contract;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+public class ContractTest {
+    private static final int WARMUP_ITERATIONS = 1000;
+    private static final int ITERATIONS = 100_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Calls every primitive overload with values that pass, values stay above the boxing cache
+     */
+    private static void requirePrimitives(int iterations) {
+        for (var i = 1000; i < 1000 + iterations; i++) {
+            long l = i;
+            Contract.requireOperation("left", i, "right", i + 1, Operator.LT);
+            Contract.requireOperation("left", i, i, Operator.EQ);
+            Contract.requireOperation("left", l, "right", l - 1, Operator.GT);
+            Contract.requireOperation("left", l, l, Operator.GE);
+            Contract.requireValidIndex(i - 1, i);
+            Contract.requireValidIndex(l - 1, l);
+            Contract.requireValidFromIndexSize(1, i - 2, i);
+            Contract.requireValidFromIndexSize(1L, l - 2, l);
+            Contract.requireValidFromToIndex(1, i - 1, i);
+            Contract.requireValidFromToIndex(1L, l - 1, l);
+        }
+    }
+
+    @Test
+    public void primitiveOverloadsDoNotAllocate() {
+        assertTrue(THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        // Load and initialize classes, and reading the counter itself, before measuring
+        requirePrimitives(WARMUP_ITERATIONS);
+        var overhead = -allocatedBytes() + allocatedBytes();
+        // Early iterations are interpreted, so boxing isn't hidden by escape analysis
+        var before = allocatedBytes();
+        requirePrimitives(ITERATIONS);
+        var after = allocatedBytes();
+        assertEquals(0, after - before - overhead);
+    }
+
+    @Test
+    public void primitiveOverloadsFailOutOfRange() {
+        assertThrows(RuntimeException.class,
+                () -> Contract.requireOperation("left", 1, "right", 1, Operator.LT));
+        assertThrows(RuntimeException.class,
+                () -> Contract.requireOperation("left", 2L, 1L, Operator.LE));
+        assertThrows(RuntimeException.class, () -> Contract.requireValidIndex(1, 1));
+        assertThrows(RuntimeException.class, () -> Contract.requireValidIndex(-1L, 1L));
+        assertThrows(RuntimeException.class, () -> Contract.requireValidFromToIndex(2, 1, 3));
+    }
+}
@@ -0,0 +1,94 @@
+package com.lxy.termdate.data;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MergeStatesTest {
+    /**
+     * Merged rows as generated by MergeStates.compute formerly in app/build.gradle, which built the
+     * merged_rows table of the classic layout
+     */
+    @NonNull
+    private static List<String> generatedMergedRows(int mergeState) {
+        var rowCount = TermDateData.ROW_COUNT;
+        var invalidRow = rowCount;
+        var mergedRows = new ArrayList<String>();
+        var value = mergeState << 1;
+        for (; ; ) {
+            var state = Integer.numberOfLeadingZeros(value) - Character.SIZE;
+            var firstRow = state - (Character.SIZE - rowCount);
+            if (firstRow == invalidRow) {
+                break;
+            }
+            state = Integer.numberOfLeadingZeros(~value & ((1 << (Character.SIZE - state)) - 1)) -
+                    Character.SIZE;
+            var lastRow = state - (Character.SIZE - rowCount);
+            if (lastRow == invalidRow) {
+                break;
+            }
+            mergedRows.add(firstRow + ".." + lastRow);
+            value &= (1 << (Character.SIZE - state)) - 1;
+        }
+        return mergedRows;
+    }
+
+    /**
+     * Merged rows read bit by bit, bit i means row (rowCount - 2 - i) is merged with the row below
+     */
+    @NonNull
+    private static List<String> bitRuns(int mergeState, int rowCount) {
+        var mergedRows = new ArrayList<String>();
+        var firstRow = -1;
+        for (var row = 0; row < rowCount; row++) {
+            var merged = row < rowCount - 1 && (mergeState >> (rowCount - 2 - row) & 1) != 0;
+            if (merged && firstRow < 0) {
+                firstRow = row;
+            } else if (!merged && firstRow >= 0) {
+                mergedRows.add(firstRow + ".." + row);
+                firstRow = -1;
+            }
+        }
+        return mergedRows;
+    }
+
+    @NonNull
+    private static List<String> walk(int cursor) {
+        var mergedRows = new ArrayList<String>();
+        for (; MergeStates.hasNext(cursor); cursor = MergeStates.next(cursor)) {
+            var mergedRow = MergeStates.get(cursor);
+            mergedRows.add(MergeStates.getFirstRow(mergedRow) + ".." + MergeStates.getLastRow(mergedRow));
+        }
+        return mergedRows;
+    }
+
+    @Test
+    public void classicStatesMatchGeneratedTable() {
+        for (var mergeState = 0; mergeState <= TermDateData.MAXIMUM_MERGED_ROWS; mergeState++) {
+            var expected = generatedMergedRows(mergeState);
+            var message = "Merge state " + mergeState;
+            assertEquals(message, expected, walk(MergeStates.begin((char) mergeState)));
+            assertEquals(message, expected,
+                    walk(MergeStates.begin((char) mergeState, TermDateData.ROW_COUNT)));
+            assertEquals(message, expected.size(), MergeStates.getCount((char) mergeState));
+        }
+    }
+
+    @Test
+    public void everyLayoutMatchesBitRuns() {
+        for (var rowCount = 1; rowCount <= TermDateData.MAX_ROW_COUNT; rowCount++) {
+            var maximumMergeState = TermDateData.maximumMergeState(rowCount);
+            for (var mergeState = 0; mergeState <= maximumMergeState; mergeState++) {
+                var expected = bitRuns(mergeState, rowCount);
+                var message = rowCount + " rows, merge state " + mergeState;
+                assertEquals(message, expected, walk(MergeStates.begin((char) mergeState, rowCount)));
+                assertEquals(message, expected.size(), MergeStates.getCount((char) mergeState));
+            }
+        }
+    }
+}
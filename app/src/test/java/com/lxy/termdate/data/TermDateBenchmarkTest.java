@@ -0,0 +1,350 @@
+package com.lxy.termdate.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import androidx.annotation.NonNull;
+
+import com.lxy.termdate.contract.Contract;
+import com.lxy.termdate.contract.Operator;
+import com.lxy.termdate.contract.Value;
+import com.lxy.termdate.util.ByteArrayAppender;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the baseline code paths against the current ones over {@link TermDates} files of the
+ * classic layout, the only layout the baseline format has. Results are printed, not asserted, as
+ * timings depend on the machine; both paths are checked to agree before they are timed
+ */
+public class TermDateBenchmarkTest {
+    private static final int FILE_COUNT = 20;
+    private static final int WARMUP_ROUNDS = 30;
+    private static final int ROUNDS = 20;
+    private static final int MERGE_STATE_WALKS = 100;
+    private static final int COLUMN_COUNT = TermDateData.COLUMN_COUNT;
+    private static final int ROW_COUNT = TermDateData.ROW_COUNT;
+    // Baseline merged_rows table: a count byte, then first and last row bytes of each merged row
+    private static final int MERGE_ROWS_STRIDE = TermDateData.MAXIMUM_MERGED_ROW * 2 + 1;
+
+    private interface Task {
+        long run() throws Exception;
+    }
+
+    /**
+     * Baseline stream decoder of version 1 files: a single byte read per length prefix, a read per
+     * string and per merge state, and a copy through a char buffer view per string
+     */
+    private static class StreamDecoder {
+        @NonNull
+        private final byte[] byteBuffer = new byte[TermDateData.MAX_STRING_LENGTH * Character.BYTES];
+        @NonNull
+        private final CharBuffer wrappedCharBuffer =
+                ByteBuffer.wrap(byteBuffer).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+        @NonNull
+        private final char[] charBuffer = new char[TermDateData.MAX_STRING_LENGTH];
+
+        private void checkedRead(@NonNull InputStream stream, int length) throws IOException {
+            var offset = 0;
+            while (offset < length) {
+                var result = stream.read(byteBuffer, offset, length - offset);
+                if (result < 0) {
+                    throw new EOFException();
+                }
+                offset += result;
+            }
+        }
+
+        @NonNull
+        private String readString(@NonNull InputStream stream) throws IOException {
+            var length = stream.read();
+            if (length == -1) {
+                throw new EOFException();
+            }
+            checkedRead(stream, length * Character.BYTES);
+            wrappedCharBuffer.clear();
+            wrappedCharBuffer.get(charBuffer, 0, length);
+            return new String(charBuffer, 0, length);
+        }
+
+        @NonNull
+        TermDate decode(@NonNull InputStream stream) throws IOException {
+            checkedRead(stream, Integer.BYTES);
+            var beginDate = (byteBuffer[3] << 24) | Byte.toUnsignedInt(byteBuffer[2]) << 16 |
+                    Byte.toUnsignedInt(byteBuffer[1]) << 8 | Byte.toUnsignedInt(byteBuffer[0]);
+            var oddView = new String[COLUMN_COUNT][ROW_COUNT];
+            var evenView = new String[COLUMN_COUNT][ROW_COUNT];
+            for (var row = 0; row < ROW_COUNT; row++) {
+                for (var column = 0; column < COLUMN_COUNT; column++) {
+                    oddView[column][row] = readString(stream);
+                    evenView[column][row] = readString(stream);
+                }
+            }
+            var mergeStates = new char[COLUMN_COUNT];
+            for (var column = 0; column < COLUMN_COUNT; column++) {
+                checkedRead(stream, Character.BYTES);
+                mergeStates[column] = (char) (Byte.toUnsignedInt(byteBuffer[0]) |
+                        Byte.toUnsignedInt(byteBuffer[1]) << 8);
+            }
+            return new TermDate(beginDate, oddView, evenView, mergeStates);
+        }
+    }
+
+    /**
+     * Baseline encoder of version 1 files, 2 bytes per char through a char array, with the length
+     * check of the former writeString
+     */
+    @NonNull
+    private static ByteArrayAppender encodeUtf16(@NonNull TermDate termDate) {
+        var appender = new ByteArrayAppender(TermDateData.ESTIMATED_FILE_SIZE);
+        var charBuffer = new char[TermDateData.MAX_STRING_LENGTH];
+        var beginDate = termDate.getBeginDate();
+        for (var i = 0; i < Integer.BYTES; i++) {
+            appender.append(beginDate >> (i * Byte.SIZE));
+        }
+        for (var row = 0; row < ROW_COUNT; row++) {
+            for (var column = 0; column < COLUMN_COUNT; column++) {
+                for (var value : new String[]{termDate.getOdd(column, row),
+                        termDate.getEven(column, row)}) {
+                    var length = value.length();
+                    Contract.requireOperation(new Value<>("length", length),
+                            new Value<>(TermDateData.MAX_STRING_LENGTH), Operator.LE);
+                    appender.append(length);
+                    value.getChars(0, length, charBuffer, 0);
+                    for (var i = 0; i < length; i++) {
+                        appender.append(charBuffer[i]);
+                        appender.append(charBuffer[i] >> 8);
+                    }
+                }
+            }
+        }
+        for (var column = 0; column < COLUMN_COUNT; column++) {
+            appender.append(termDate.getMergeState(column));
+            appender.append(termDate.getMergeState(column) >> 8);
+        }
+        return appender;
+    }
+
+    /**
+     * Table of the baseline merged_rows resource, filled from MergeStates, which
+     * {@link MergeStatesTest} checks against the generator of the resource
+     */
+    @NonNull
+    private static byte[] mergedRowsTable() {
+        var table = new byte[(TermDateData.MAXIMUM_MERGED_ROWS + 1) * MERGE_ROWS_STRIDE];
+        for (var mergeState = 0; mergeState <= TermDateData.MAXIMUM_MERGED_ROWS; mergeState++) {
+            var start = mergeState * MERGE_ROWS_STRIDE;
+            table[start] = (byte) MergeStates.getCount((char) mergeState);
+            var index = start + 1;
+            for (var cursor = MergeStates.begin((char) mergeState); MergeStates.hasNext(cursor);
+                 cursor = MergeStates.next(cursor)) {
+                var mergedRow = MergeStates.get(cursor);
+                table[index++] = (byte) MergeStates.getFirstRow(mergedRow);
+                table[index++] = (byte) MergeStates.getLastRow(mergedRow);
+            }
+        }
+        return table;
+    }
+
+    private final TermDate[] termDates = new TermDate[FILE_COUNT];
+    private final Path[] utf16Files = new Path[FILE_COUNT];
+    private final Path[] files = new Path[FILE_COUNT];
+    private Path directory;
+
+    private static void time(@NonNull String name, @NonNull Task baseline, @NonNull Task current)
+            throws Exception {
+        // Results are summed so that neither path is optimized away
+        var sink = 0L;
+        for (var i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += baseline.run() + current.run();
+        }
+        var baselineNanos = 0L;
+        var currentNanos = 0L;
+        for (var i = 0; i < ROUNDS; i++) {
+            var begin = System.nanoTime();
+            sink += baseline.run();
+            var middle = System.nanoTime();
+            sink += current.run();
+            currentNanos += System.nanoTime() - middle;
+            baselineNanos += middle - begin;
+        }
+        System.out.printf("%s: baseline %dus, current %dus per round (%d)%n", name,
+                baselineNanos / ROUNDS / 1000, currentNanos / ROUNDS / 1000, sink);
+    }
+
+    private static long sum(@NonNull TermDate termDate) {
+        var sum = (long) termDate.getBeginDate();
+        for (var column = 0; column < termDate.getColumnCount(); column++) {
+            sum += termDate.getMergeState(column);
+            for (var row = 0; row < termDate.getRowCount(); row++) {
+                sum += termDate.getOdd(column, row).hashCode() * 31L +
+                        termDate.getEven(column, row).hashCode();
+            }
+        }
+        return sum;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("TermDateBenchmarkTest");
+        var random = new Random(4);
+        for (var i = 0; i < FILE_COUNT; i++) {
+            termDates[i] = TermDates.random(random, COLUMN_COUNT, ROW_COUNT);
+            var utf16 = encodeUtf16(termDates[i]);
+            utf16Files[i] = Files.write(directory.resolve(i + ".v1"),
+                    Arrays.copyOf(utf16.buffer(), utf16.size()));
+            var file = TermDates.encode(termDates[i]);
+            files[i] = Files.write(directory.resolve(i + ".bin"), file.array());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (var i = 0; i < FILE_COUNT; i++) {
+            Files.delete(utf16Files[i]);
+            Files.delete(files[i]);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void decodeFromFile() throws Exception {
+        var streamDecoder = new StreamDecoder();
+        var codec = new TermDateCodec();
+        for (var i = 0; i < FILE_COUNT; i++) {
+            try (var stream = Channels.newInputStream(FileChannel.open(utf16Files[i]))) {
+                TermDates.assertTermDateEquals(termDates[i], streamDecoder.decode(stream));
+            }
+            var file = ByteBuffer.wrap(Files.readAllBytes(utf16Files[i]));
+            TermDates.assertTermDateEquals(termDates[i], assertDecoded(codec.decode(file, false)));
+        }
+        // Same unbuffered channel stream as the internal file path, every read is a syscall
+        time("Decode version 1 files", () -> {
+            var sum = 0L;
+            for (var path : utf16Files) {
+                try (var stream = Channels.newInputStream(FileChannel.open(path))) {
+                    sum += sum(streamDecoder.decode(stream));
+                }
+            }
+            return sum;
+        }, () -> {
+            var sum = 0L;
+            for (var path : utf16Files) {
+                try (var stream = Channels.newInputStream(FileChannel.open(path))) {
+                    sum += sum(assertDecoded(codec.decode(TermDateCodec.readFully(stream), false)));
+                }
+            }
+            return sum;
+        });
+        // Each path reading the files it writes
+        time("Decode files", () -> {
+            var sum = 0L;
+            for (var path : utf16Files) {
+                try (var stream = Channels.newInputStream(FileChannel.open(path))) {
+                    sum += sum(streamDecoder.decode(stream));
+                }
+            }
+            return sum;
+        }, () -> {
+            var sum = 0L;
+            for (var path : files) {
+                try (var stream = Channels.newInputStream(FileChannel.open(path))) {
+                    sum += sum(assertDecoded(codec.decode(TermDateCodec.readFully(stream), false)));
+                }
+            }
+            return sum;
+        });
+    }
+
+    @Test
+    public void encodeMixedStrings() throws Exception {
+        var codec = new TermDateCodec();
+        var baselineSize = 0L;
+        var currentSize = 0L;
+        for (var termDate : termDates) {
+            baselineSize += encodeUtf16(termDate).size();
+            var encoded = codec.encode(termDate);
+            currentSize += encoded.size();
+            var decoded = codec.decode(ByteBuffer.wrap(encoded.buffer(), 0, encoded.size()), false);
+            TermDates.assertTermDateEquals(termDate, assertDecoded(decoded));
+        }
+        System.out.printf("Encoded size: baseline %d bytes, current %d bytes%n", baselineSize,
+                currentSize);
+        time("Encode", () -> {
+            var size = 0L;
+            for (var termDate : termDates) {
+                size += encodeUtf16(termDate).size();
+            }
+            return size;
+        }, () -> {
+            var size = 0L;
+            for (var termDate : termDates) {
+                size += codec.encode(termDate).size();
+            }
+            return size;
+        });
+    }
+
+    @Test
+    public void walkMergeStates() throws Exception {
+        var table = mergedRowsTable();
+        var stateCount = TermDateData.MAXIMUM_MERGED_ROWS + 1;
+        for (var mergeState = 0; mergeState < stateCount; mergeState++) {
+            assertEquals(table[mergeState * MERGE_ROWS_STRIDE], MergeStates.getCount((char) mergeState));
+        }
+        // Baseline lookups keep the contract checks of the former MergeStates
+        time("Walk every merge state", () -> {
+            var sum = 0L;
+            for (var walk = 0; walk < MERGE_STATE_WALKS; walk++) {
+                for (var mergeState = 0; mergeState < stateCount; mergeState++) {
+                    Contract.requireValidIndex(mergeState, TermDateData.MAXIMUM_MERGED_ROWS + 1);
+                    var start = mergeState * MERGE_ROWS_STRIDE;
+                    var count = table[start];
+                    for (var i = 0; i < count; i++) {
+                        Contract.requireValidIndex(i, count);
+                        var firstRow = table[start + 1 + i * 2];
+                        var lastRow = table[start + 2 + i * 2];
+                        TermDateData.validateRowIndex(firstRow);
+                        TermDateData.validateRowIndex(lastRow);
+                        sum += firstRow * 31L + lastRow;
+                    }
+                }
+            }
+            return sum;
+        }, () -> {
+            var sum = 0L;
+            for (var walk = 0; walk < MERGE_STATE_WALKS; walk++) {
+                for (var mergeState = 0; mergeState < stateCount; mergeState++) {
+                    for (var cursor = MergeStates.begin((char) mergeState); MergeStates.hasNext(cursor);
+                         cursor = MergeStates.next(cursor)) {
+                        var mergedRow = MergeStates.get(cursor);
+                        sum += MergeStates.getFirstRow(mergedRow) * 31L +
+                                MergeStates.getLastRow(mergedRow);
+                    }
+                }
+            }
+            return sum;
+        });
+    }
+
+    @NonNull
+    private static TermDate assertDecoded(TermDate termDate) {
+        assertNotNull(termDate);
+        return termDate;
+    }
+}
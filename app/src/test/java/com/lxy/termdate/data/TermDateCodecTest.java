@@ -0,0 +1,179 @@
+package com.lxy.termdate.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TermDateCodecTest {
+    private static final int ITERATIONS = 2000;
+    private static final int VERSION_OFFSET = Integer.BYTES;
+
+    private final TermDateCodec codec = new TermDateCodec();
+    private final Random random = new Random(12);
+
+    @NonNull
+    private static byte[] toArray(@NonNull ByteBuffer buffer) {
+        return Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+    }
+
+    @Test
+    public void randomDataRoundTrips() {
+        for (var i = 0; i < ITERATIONS; i++) {
+            var termDate = TermDates.random(random);
+            var file = TermDates.encode(termDate);
+            assertTrue(file.remaining() <= TermDateData.MAX_FILE_SIZE);
+            for (var trusted : new boolean[]{false, true}) {
+                var decoded = codec.decode(file.duplicate(), trusted);
+                assertNotNull(decoded);
+                TermDates.assertTermDateEquals(termDate, decoded);
+            }
+        }
+    }
+
+    @Test
+    public void classicLayoutKeepsVersion2() {
+        var classic = TermDates.encode(TermDates.random(random, TermDateData.COLUMN_COUNT,
+                TermDateData.ROW_COUNT));
+        assertEquals(2, classic.get(VERSION_OFFSET));
+        var other = TermDates.encode(TermDates.random(random, TermDateData.MAX_COLUMN_COUNT,
+                TermDateData.MAX_ROW_COUNT));
+        assertEquals(3, other.get(VERSION_OFFSET));
+    }
+
+    @Test
+    public void version1FileDecodes() throws Exception {
+        var stream = new ByteArrayOutputStream();
+        var beginDate = 19728;
+        stream.write(new byte[]{(byte) beginDate, (byte) (beginDate >> 8), 0, 0});
+        var oddView = new String[TermDateData.COLUMN_COUNT][TermDateData.ROW_COUNT];
+        var evenView = new String[TermDateData.COLUMN_COUNT][TermDateData.ROW_COUNT];
+        // Cells are stored in row major order, odd string before even string
+        for (var row = 0; row < TermDateData.ROW_COUNT; row++) {
+            for (var column = 0; column < TermDateData.COLUMN_COUNT; column++) {
+                oddView[column][row] = row % 3 == 0 ? "" : "课程" + column + row;
+                evenView[column][row] = "Course é " + column;
+                for (var value : new String[]{oddView[column][row], evenView[column][row]}) {
+                    stream.write(value.length());
+                    for (var i = 0; i < value.length(); i++) {
+                        stream.write(value.charAt(i));
+                        stream.write(value.charAt(i) >> 8);
+                    }
+                }
+            }
+        }
+        var mergeStates = new char[]{0, 1, 0x7FF, 0x555, 0x306};
+        for (var mergeState : mergeStates) {
+            stream.write(mergeState);
+            stream.write(mergeState >> 8);
+        }
+        var decoded = codec.decode(ByteBuffer.wrap(stream.toByteArray()), false);
+        assertNotNull(decoded);
+        TermDates.assertTermDateEquals(new TermDate(beginDate, oddView, evenView, mergeStates),
+                decoded);
+    }
+
+    @Test
+    public void largestFileFitsMaximumSize() {
+        var columnCount = TermDateData.MAX_COLUMN_COUNT;
+        var rowCount = TermDateData.MAX_ROW_COUNT;
+        var oddView = new String[columnCount][rowCount];
+        var evenView = new String[columnCount][rowCount];
+        var next = 0x4E00;
+        // Distinct strings defeat the string table, CJK chars defeat compact encodings
+        for (var view : new String[][][]{oddView, evenView}) {
+            for (var column : view) {
+                for (var row = 0; row < rowCount; row++) {
+                    var chars = new char[TermDateData.MAX_STRING_LENGTH];
+                    Arrays.fill(chars, (char) next++);
+                    column[row] = new String(chars);
+                }
+            }
+        }
+        var termDate = new TermDate(0, oddView, evenView, new char[columnCount]);
+        var file = TermDates.encode(termDate);
+        assertEquals(TermDateData.MAX_FILE_SIZE, file.remaining());
+        assertNotNull(codec.decode(file.duplicate(), false));
+    }
+
+    @Test
+    public void oversizedFileIsRejected() throws Exception {
+        var file = toArray(TermDates.encode(TermDates.random(random)));
+        var oversized = Arrays.copyOf(file, TermDateData.READ_LIMIT);
+        assertNull(codec.decode(ByteBuffer.wrap(oversized), true));
+        // Reading stops right after the maximum size
+        var read = TermDateCodec.readFully(new ByteArrayInputStream(
+                Arrays.copyOf(file, TermDateData.READ_LIMIT * 2)));
+        assertEquals(TermDateData.READ_LIMIT, read.remaining());
+        assertNull(codec.decode(read, true));
+    }
+
+    @Test
+    public void corruptedPayloadIsRejected() {
+        for (var i = 0; i < ITERATIONS; i++) {
+            var file = toArray(TermDates.encode(TermDates.random(random)));
+            var offset = TermDateData.HEADER_SIZE + random.nextInt(file.length - TermDateData.HEADER_SIZE);
+            file[offset] ^= (byte) (1 << random.nextInt(Byte.SIZE));
+            assertNull(codec.decode(ByteBuffer.wrap(file), false));
+        }
+    }
+
+    @Test
+    public void truncatedFileIsRejected() {
+        var file = toArray(TermDates.encode(TermDates.random(random)));
+        for (var length = 0; length < file.length; length++) {
+            for (var trusted : new boolean[]{false, true}) {
+                assertNull(codec.decode(ByteBuffer.wrap(file, 0, length), trusted));
+            }
+        }
+    }
+
+    @Test
+    public void garbageNeverThrows() {
+        for (var i = 0; i < ITERATIONS * 10; i++) {
+            var file = toArray(TermDates.encode(TermDates.random(random)));
+            // Keep the header valid now and then, so that trusted decoding reaches the payload
+            var start = random.nextBoolean() ? 0 : TermDateData.HEADER_SIZE;
+            var count = 1 + random.nextInt(8);
+            for (var j = 0; j < count; j++) {
+                file[start + random.nextInt(file.length - start)] = (byte) random.nextInt();
+            }
+            for (var trusted : new boolean[]{false, true}) {
+                codec.decode(ByteBuffer.wrap(file), trusted);
+            }
+            codec.hash(ByteBuffer.wrap(file), true);
+        }
+    }
+
+    @Test
+    public void hashIdentifiesDecodedBytes() {
+        var termDate = TermDates.random(random);
+        var file = toArray(TermDates.encode(termDate));
+        var hash = codec.hash(ByteBuffer.wrap(file), false);
+        assertNotEquals(TermDateData.NO_HASH, hash);
+        assertEquals(hash, codec.hash(ByteBuffer.wrap(file), true));
+        assertEquals(hash, codec.hash(TermDates.encode(termDate), false));
+        // Bytes after payload are never decoded
+        assertEquals(hash, codec.hash(ByteBuffer.wrap(Arrays.copyOf(file, file.length + 1)), true));
+        var buffer = ByteBuffer.wrap(file);
+        codec.hash(buffer, true);
+        assertEquals(0, buffer.position());
+
+        var corrupted = file.clone();
+        corrupted[corrupted.length - 1] ^= 1;
+        assertEquals(TermDateData.NO_HASH, codec.hash(ByteBuffer.wrap(corrupted), true));
+        var other = toArray(TermDates.encode(TermDates.random(random)));
+        assertNotEquals(hash, codec.hash(ByteBuffer.wrap(other), false));
+    }
+}
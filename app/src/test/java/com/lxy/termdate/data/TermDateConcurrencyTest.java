@@ -0,0 +1,83 @@
+package com.lxy.termdate.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class TermDateConcurrencyTest {
+    private static final int FILE_COUNT = 200;
+    private static final int ROUNDS = 20;
+    private static final int PARALLELISM = 8;
+
+    private final TermDate[] termDates = new TermDate[FILE_COUNT];
+    private final ByteBuffer[] files = new ByteBuffer[FILE_COUNT];
+
+    public TermDateConcurrencyTest() {
+        var random = new Random(7);
+        for (var i = 0; i < FILE_COUNT; i++) {
+            termDates[i] = TermDates.random(random);
+            files[i] = TermDates.encode(termDates[i]);
+        }
+    }
+
+    private void decodeAllInParallel(ForkJoinPool pool) throws Exception {
+        var codec = ThreadLocal.withInitial(TermDateCodec::new);
+        pool.submit(() -> IntStream.range(0, FILE_COUNT * ROUNDS).parallel().forEach(i -> {
+            var index = i % FILE_COUNT;
+            // Buffers are not thread safe, every decode reads its own view of the file
+            var decoded = codec.get().decode(files[index].duplicate(), false);
+            assertNotNull(decoded);
+            TermDates.assertTermDateEquals(termDates[index], decoded);
+        })).get();
+    }
+
+    @Test
+    public void parallelDecodesMatchEncodedData() throws Exception {
+        var pool = new ForkJoinPool(PARALLELISM);
+        try {
+            decodeAllInParallel(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void stagingIsIsolatedFromParallelDecodes() throws Exception {
+        var pool = new ForkJoinPool(PARALLELISM);
+        var io = Executors.newSingleThreadExecutor();
+        try {
+            // Codecs of other threads keep decoding while the facade stages and commits
+            var background = pool.submit((Callable<Void>) () -> {
+                decodeAllInParallel(pool);
+                return null;
+            });
+            for (var i = 0; i < FILE_COUNT * 2; i++) {
+                var index = i % FILE_COUNT;
+                // Staged on the I/O thread, committed on this thread standing in for main thread
+                var result = io.submit(() -> TermDateData.deserialize(files[index].duplicate(),
+                        false, null)).get();
+                assertEquals(DeserializeResult.OK, (int) result);
+                TermDateData.commit();
+                TermDates.assertTermDateEquals(termDates[index], TermDateData.get());
+                var active = TermDateData.activeView();
+                assertEquals(termDates[index].getColumnCount(), active.length);
+                assertEquals(termDates[index].getRowCount(), active[0].length);
+            }
+            background.get();
+        } finally {
+            io.shutdown();
+            pool.shutdown();
+            io.awaitTermination(1, TimeUnit.MINUTES);
+            TermDateData.clear();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.lxy.termdate.data;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.lxy.termdate.BuildConfig;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random termdate data for tests, covering every layout, string encoding and merge state
+ */
+class TermDates {
+    private static final int EMPTY = 0;
+    private static final int ASCII = 1;
+    private static final int LATIN_1 = 2;
+    private static final int CJK = 3;
+    private static final int SUPPLEMENTARY = 4;
+    // Any char, including unpaired surrogates
+    private static final int ANY = 5;
+    private static final int KIND_COUNT = 6;
+
+    @NonNull
+    static TermDate random(@NonNull Random random) {
+        var classic = random.nextInt(4) == 0;
+        var columnCount = classic ? TermDateData.COLUMN_COUNT :
+                1 + random.nextInt(TermDateData.MAX_COLUMN_COUNT);
+        var rowCount = classic ? TermDateData.ROW_COUNT : 1 + random.nextInt(TermDateData.MAX_ROW_COUNT);
+        return random(random, columnCount, rowCount);
+    }
+
+    @NonNull
+    static TermDate random(@NonNull Random random, int columnCount, int rowCount) {
+        // A small pool of strings makes string tables pay off
+        var pool = new String[1 + random.nextInt(columnCount * rowCount * 2)];
+        for (var i = 0; i < pool.length; i++) {
+            pool[i] = randomString(random);
+        }
+        var oddView = new String[columnCount][rowCount];
+        var evenView = new String[columnCount][rowCount];
+        var mergeStates = new char[columnCount];
+        for (var column = 0; column < columnCount; column++) {
+            for (var row = 0; row < rowCount; row++) {
+                oddView[column][row] = pool[random.nextInt(pool.length)];
+                evenView[column][row] = random.nextBoolean() ? oddView[column][row] :
+                        pool[random.nextInt(pool.length)];
+            }
+            mergeStates[column] = (char) random.nextInt(TermDateData.maximumMergeState(rowCount) + 1);
+        }
+        var beginDate = (int) (random.nextDouble() * BuildConfig.MAX_DATE);
+        return new TermDate(beginDate, oddView, evenView, mergeStates);
+    }
+
+    @NonNull
+    static String randomString(@NonNull Random random) {
+        var kind = random.nextInt(KIND_COUNT);
+        if (kind == EMPTY) {
+            return "";
+        }
+        var length = random.nextInt(8) == 0 ? TermDateData.MAX_STRING_LENGTH : random.nextInt(16);
+        var builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            switch (kind) {
+                case ASCII -> builder.append((char) (0x20 + random.nextInt(0x5F)));
+                case LATIN_1 -> builder.append((char) random.nextInt(0x100));
+                case CJK -> builder.append((char) (0x4E00 + random.nextInt(0x5200)));
+                case SUPPLEMENTARY -> {
+                    if (builder.length() + 1 < length) {
+                        builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    } else {
+                        builder.append((char) random.nextInt(0x80));
+                    }
+                }
+                default -> builder.append((char) random.nextInt(Character.MAX_VALUE + 1));
+            }
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    static ByteBuffer encode(@NonNull TermDate termDate) {
+        var appender = new TermDateCodec().encode(termDate);
+        return ByteBuffer.wrap(Arrays.copyOf(appender.buffer(), appender.size()));
+    }
+
+    static void assertTermDateEquals(@NonNull TermDate expected, @NonNull TermDate actual) {
+        assertEquals(expected.getBeginDate(), actual.getBeginDate());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        for (var column = 0; column < expected.getColumnCount(); column++) {
+            assertEquals(expected.getMergeState(column), actual.getMergeState(column));
+            for (var row = 0; row < expected.getRowCount(); row++) {
+                assertEquals(expected.getOdd(column, row), actual.getOdd(column, row));
+                assertEquals(expected.getEven(column, row), actual.getEven(column, row));
+            }
+        }
+    }
+}
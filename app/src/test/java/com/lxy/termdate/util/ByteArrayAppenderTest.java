@@ -0,0 +1,113 @@
+package com.lxy.termdate.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ByteArrayAppenderTest {
+    /**
+     * Returns at most a few bytes per read, like pipes and content providers may do
+     */
+    private static class ShortReadInputStream extends InputStream {
+        @NonNull
+        private final ByteArrayInputStream stream;
+        @NonNull
+        private final Random random;
+
+        ShortReadInputStream(@NonNull byte[] data, @NonNull Random random) {
+            stream = new ByteArrayInputStream(data);
+            this.random = random;
+        }
+
+        @Override
+        public int read() {
+            return stream.read();
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) {
+            return stream.read(buffer, offset, Math.min(length, 1 + random.nextInt(3)));
+        }
+    }
+
+    private final Random random = new Random(14);
+
+    @NonNull
+    private byte[] randomBytes(int size) {
+        var bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @NonNull
+    private static byte[] content(@NonNull ByteArrayAppender appender) {
+        return Arrays.copyOf(appender.buffer(), appender.size());
+    }
+
+    @Test
+    public void appendGrowsBuffer() {
+        var appender = new ByteArrayAppender(0);
+        appender.append(0x1FF);
+        appender.append(new byte[]{2, 3});
+        appender.append(new byte[]{4, 5, 6}, 2);
+        appender.append(new byte[]{7, 8, 9}, 1, 2);
+        appender.append(new byte[]{10}, 0, 0);
+        assertArrayEquals(new byte[]{(byte) 0xFF, 2, 3, 4, 5, 8, 9}, content(appender));
+    }
+
+    @Test
+    public void appendRejectsOutOfRange() {
+        var appender = new ByteArrayAppender(4);
+        assertThrows(RuntimeException.class, () -> appender.append(new byte[2], 1, 2));
+        assertThrows(RuntimeException.class, () -> appender.append(new byte[2], 2, 1));
+        assertThrows(RuntimeException.class, () -> new ByteArrayAppender(-1));
+        assertEquals(0, appender.size());
+    }
+
+    @Test
+    public void readFromHandlesShortReads() throws IOException {
+        for (var size : new int[]{0, 1, 7, 64, 1000}) {
+            for (var capacity : new int[]{0, size, size + 1, size / 2 + 1}) {
+                var data = randomBytes(size);
+                var appender = new ByteArrayAppender(capacity);
+                // End of stream comes before the limit
+                assertEquals(size, appender.readFrom(new ShortReadInputStream(data, random), size + 1));
+                assertArrayEquals(data, content(appender));
+            }
+        }
+    }
+
+    @Test
+    public void readFromKeepsBufferThatFitsStream() throws IOException {
+        var data = randomBytes(100);
+        var appender = new ByteArrayAppender(data.length);
+        var buffer = appender.buffer();
+        appender.readFrom(new ShortReadInputStream(data, random), 1000);
+        assertSame(buffer, appender.buffer());
+        assertArrayEquals(data, content(appender));
+    }
+
+    @Test
+    public void readFromStopsAtLimit() throws IOException {
+        var data = randomBytes(100);
+        var stream = new ShortReadInputStream(data, random);
+        var appender = new ByteArrayAppender(10);
+        assertEquals(60, appender.readFrom(stream, 60));
+        assertArrayEquals(Arrays.copyOf(data, 60), content(appender));
+        // Bytes beyond the limit are left in the stream, and appended after existing content
+        assertEquals(40, appender.readFrom(stream, 60));
+        assertArrayEquals(data, content(appender));
+        assertEquals(0, appender.readFrom(stream, 60));
+    }
+}
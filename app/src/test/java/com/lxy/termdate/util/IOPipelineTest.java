@@ -0,0 +1,156 @@
+package com.lxy.termdate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class IOPipelineTest {
+    /**
+     * Queues tasks until run explicitly, standing in for both the I/O thread and the main thread
+     */
+    private static class QueueExecutor extends AbstractExecutorService {
+        @NonNull
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private final QueueExecutor io = new QueueExecutor();
+    private final QueueExecutor main = new QueueExecutor();
+    private final IOPipeline pipeline = new IOPipeline(io, main);
+    private final List<Integer> results = new ArrayList<>();
+
+    @Test
+    public void resultIsDeliveredOnMainExecutor() {
+        pipeline.submit(() -> 1, results::add);
+        io.runAll();
+        assertTrue(results.isEmpty());
+        main.runAll();
+        assertEquals(List.of(1), results);
+    }
+
+    @Test
+    public void submitCancelsQueuedTask() {
+        var started = new int[1];
+        pipeline.submit(() -> {
+            started[0]++;
+            return 1;
+        }, results::add);
+        pipeline.submit(() -> 2, results::add);
+        io.runAll();
+        main.runAll();
+        assertEquals(0, started[0]);
+        assertEquals(List.of(2), results);
+    }
+
+    @Test
+    public void submitDropsResultOfFinishedTask() {
+        pipeline.submit(() -> 1, results::add);
+        io.runAll();
+        // Result of the first task is already posted to main thread
+        pipeline.submit(() -> 2, results::add);
+        main.runAll();
+        assertTrue(results.isEmpty());
+        io.runAll();
+        main.runAll();
+        assertEquals(List.of(2), results);
+    }
+
+    @Test
+    public void cancelAndShutdownDropResults() {
+        pipeline.submit(() -> 1, results::add);
+        io.runAll();
+        pipeline.cancel();
+        pipeline.submit(() -> 2, results::add);
+        pipeline.shutdown();
+        io.runAll();
+        main.runAll();
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void executedTaskIsNeverCancelled() {
+        var runs = new int[1];
+        pipeline.execute(() -> runs[0]++);
+        pipeline.submit(() -> 1, results::add);
+        pipeline.cancel();
+        pipeline.shutdown();
+        io.runAll();
+        main.runAll();
+        assertEquals(1, runs[0]);
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void executeDoesNotCancelSubmittedTask() {
+        var runs = new int[1];
+        pipeline.submit(() -> 1, results::add);
+        pipeline.execute(() -> runs[0]++);
+        io.runAll();
+        main.runAll();
+        assertEquals(1, runs[0]);
+        assertEquals(List.of(1), results);
+    }
+
+    @Test
+    public void failureIsRethrownOnMainExecutor() {
+        pipeline.<Integer>submit(() -> {
+            throw new IllegalStateException("submitted");
+        }, results::add);
+        io.runAll();
+        assertEquals("submitted",
+                assertThrows(IllegalStateException.class, main::runAll).getMessage());
+        pipeline.execute(() -> {
+            throw new IllegalStateException("executed");
+        });
+        io.runAll();
+        assertEquals("executed",
+                assertThrows(IllegalStateException.class, main::runAll).getMessage());
+        assertTrue(results.isEmpty());
+    }
+}
@@ -0,0 +1,210 @@
+package com.lxy.termdate.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class WriteBehindFileTest {
+    private static final int KILLED_WRITE_SIZE = 1 << 20;
+    private static final int KILL_COUNT = 10;
+    private static final String WRITTEN = "written";
+
+    /**
+     * Rewrites the file forever with generations of identical bytes, until killed. Prints
+     * {@link #WRITTEN} once the first write completed
+     */
+    public static class Writer {
+        public static void main(@NonNull String[] args) throws IOException {
+            var directory = Paths.get(args[0]);
+            var file = new WriteBehindFile(directory.resolve("file"), directory.resolve("file.tmp"),
+                    Runnable::run, data -> {
+            }, e -> {
+            });
+            file.writeNow(filled(1));
+            System.out.println(WRITTEN);
+            System.out.flush();
+            for (var generation = 2; ; generation++) {
+                file.writeNow(filled(generation));
+            }
+        }
+    }
+
+    private Path directory;
+    private Path path;
+    private Path tempPath;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final List<ByteArrayAppender> written = new ArrayList<>();
+    private final List<IOException> errors = new ArrayList<>();
+    private WriteBehindFile file;
+
+    @NonNull
+    private static ByteArrayAppender filled(int generation) {
+        var data = new ByteArrayAppender(KILLED_WRITE_SIZE);
+        var bytes = new byte[KILLED_WRITE_SIZE];
+        Arrays.fill(bytes, (byte) generation);
+        data.append(bytes);
+        return data;
+    }
+
+    @NonNull
+    private static ByteArrayAppender data(@NonNull byte[] bytes) {
+        var data = new ByteArrayAppender(bytes.length);
+        data.append(bytes);
+        return data;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("WriteBehindFileTest");
+        path = directory.resolve("file");
+        tempPath = directory.resolve("file.tmp");
+        file = new WriteBehindFile(path, tempPath, tasks::add, written::add, errors::add);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (var each : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.delete(each);
+            }
+        }
+    }
+
+    @Test
+    public void writeReplacesFile() throws IOException {
+        Files.write(path, new byte[]{1, 2, 3});
+        var data = data(new byte[]{4, 5});
+        file.write(data);
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(path));
+        runTasks();
+        assertArrayEquals(new byte[]{4, 5}, Files.readAllBytes(path));
+        assertFalse(Files.exists(tempPath));
+        assertEquals(1, written.size());
+        assertSame(data, written.get(0));
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void queuedWritesAreCoalesced() throws IOException {
+        file.write(data(new byte[]{1}));
+        file.write(data(new byte[]{2}));
+        var latest = data(new byte[]{3});
+        file.write(latest);
+        runTasks();
+        assertArrayEquals(new byte[]{3}, Files.readAllBytes(path));
+        assertEquals(List.of(latest), written);
+    }
+
+    @Test
+    public void interruptedWriteKeepsOldFile() throws IOException {
+        var old = new byte[100];
+        var bytes = new byte[100];
+        var random = new Random(15);
+        random.nextBytes(old);
+        random.nextBytes(bytes);
+        for (var offset = 0; offset <= bytes.length; offset++) {
+            Files.write(path, old);
+            // Left by a process killed after writing offset bytes of the temp file
+            Files.write(tempPath, Arrays.copyOf(bytes, offset));
+            assertArrayEquals(old, Files.readAllBytes(path));
+            file.write(data(bytes));
+            runTasks();
+            assertArrayEquals(bytes, Files.readAllBytes(path));
+            assertFalse(Files.exists(tempPath));
+        }
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void failedWriteKeepsOldFileAndReportsError() throws IOException {
+        Files.write(path, new byte[]{1});
+        // Temp file can be neither deleted nor created
+        Files.createDirectory(tempPath);
+        Files.write(tempPath.resolve("child"), new byte[0]);
+        file.write(data(new byte[]{2}));
+        runTasks();
+        assertEquals(1, errors.size());
+        assertTrue(written.isEmpty());
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(path));
+
+        Files.delete(tempPath.resolve("child"));
+        Files.delete(tempPath);
+        file.write(data(new byte[]{3}));
+        runTasks();
+        assertEquals(1, errors.size());
+        assertEquals(1, written.size());
+        assertArrayEquals(new byte[]{3}, Files.readAllBytes(path));
+    }
+
+    @Test
+    public void failedRenameReportsError() throws IOException {
+        // File can't be replaced by the temp file
+        Files.createDirectory(path);
+        Files.write(path.resolve("child"), new byte[0]);
+        file.write(data(new byte[]{1}));
+        runTasks();
+        assertEquals(1, errors.size());
+        assertTrue(written.isEmpty());
+        assertTrue(Files.isDirectory(path));
+    }
+
+    @Test
+    public void killedWriterLeavesCompleteFile() throws Exception {
+        var java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        var random = new Random(15);
+        for (var i = 0; i < KILL_COUNT; i++) {
+            var process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Writer.class.getName(), directory.toString())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try {
+                // However slow startup is, kill only once a write completed
+                var reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null && !line.equals(WRITTEN)) {
+                    // Skip anything the JVM prints first
+                }
+                assertEquals(WRITTEN, line);
+                // Somewhere within the writes that follow
+                Thread.sleep(random.nextInt(200));
+            } finally {
+                process.destroyForcibly();
+            }
+            assertTrue(process.waitFor(1, TimeUnit.MINUTES));
+            var bytes = Files.readAllBytes(path);
+            assertEquals(KILLED_WRITE_SIZE, bytes.length);
+            for (var value : bytes) {
+                assertEquals(bytes[0], value);
+            }
+        }
+    }
+}
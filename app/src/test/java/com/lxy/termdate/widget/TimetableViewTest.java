@@ -0,0 +1,174 @@
+package com.lxy.termdate.widget;
+
+import static org.junit.Assert.assertEquals;
+
+import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.NonNull;
+
+import com.lxy.termdate.data.TermDateData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class TimetableViewTest {
+    private static final int WIDTH = 1080;
+    private static final int COLUMN_COUNT = TermDateData.COLUMN_COUNT;
+    private static final int ROW_COUNT = TermDateData.ROW_COUNT;
+
+    private final String[] columnHeader = new String[TermDateData.MAX_COLUMN_COUNT + 1];
+    private final String[] rowHeader = new String[TermDateData.MAX_ROW_COUNT];
+    private final String[][] cells = cells("Odd");
+    private final String[][] alternateCells = cells("Even");
+    private TimetableView view;
+
+    @NonNull
+    private static String[][] cells(@NonNull String prefix) {
+        var cells = new String[COLUMN_COUNT][ROW_COUNT];
+        for (var column = 0; column < COLUMN_COUNT; column++) {
+            for (var row = 0; row < ROW_COUNT; row++) {
+                cells[column][row] = prefix + " " + column + " " + row;
+            }
+        }
+        return cells;
+    }
+
+    @NonNull
+    private static String[][] copy(@NonNull String[][] cells) {
+        var copy = new String[cells.length][];
+        for (var column = 0; column < cells.length; column++) {
+            copy[column] = cells[column].clone();
+        }
+        return copy;
+    }
+
+    private void measure(int width) {
+        view.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+    }
+
+    private void touch(int action, long eventTime, float x, float y) {
+        var event = MotionEvent.obtain(0, eventTime, action, x, y, 0);
+        view.onTouchEvent(event);
+        event.recycle();
+    }
+
+    @Before
+    public void setUp() {
+        for (var i = 0; i < columnHeader.length; i++) {
+            columnHeader[i] = "Column " + i;
+        }
+        for (var i = 0; i < rowHeader.length; i++) {
+            rowHeader[i] = "Row " + i;
+        }
+        view = new TimetableView(RuntimeEnvironment.getApplication());
+        view.setHeaders(columnHeader, rowHeader);
+        view.setCells(cells, alternateCells);
+        measure(WIDTH);
+    }
+
+    @Test
+    public void measureLaysOutEveryStringOnce() {
+        // Column headers of data columns share the cell width, the header column has its own
+        var strings = new HashSet<>(Arrays.asList(columnHeader).subList(1, COLUMN_COUNT + 1));
+        for (var column = 0; column < COLUMN_COUNT; column++) {
+            strings.addAll(Arrays.asList(cells[column]));
+            strings.addAll(Arrays.asList(alternateCells[column]));
+        }
+        assertEquals(strings.size(), view.createdCellLayouts());
+        // Same width reuses geometry
+        measure(WIDTH);
+        assertEquals(strings.size(), view.createdCellLayouts());
+    }
+
+    @Test
+    public void updateLaysOutOnlyChangedCells() {
+        var created = view.createdCellLayouts();
+        var newCells = copy(cells);
+        var row = ROW_COUNT / 2;
+        newCells[0][row] = "Changed 0";
+        newCells[COLUMN_COUNT - 1][row] = "Changed 1";
+        var changedRows = new int[TermDateData.MAX_COLUMN_COUNT];
+        changedRows[0] = 1 << row;
+        changedRows[COLUMN_COUNT - 1] = 1 << row;
+        view.updateCells(newCells, alternateCells, changedRows, null);
+        // Alternate cells of the changed cells are still cached
+        assertEquals(created + 2, view.createdCellLayouts());
+        measure(WIDTH);
+        assertEquals(created + 2, view.createdCellLayouts());
+    }
+
+    @Test
+    public void updatesDropReplacedLayouts() {
+        var cached = view.cachedCellLayouts();
+        var changedRows = new int[TermDateData.MAX_COLUMN_COUNT];
+        changedRows[0] = 1;
+        for (var i = 0; i < 100; i++) {
+            var newCells = copy(cells);
+            newCells[0][0] = "Replaced " + i;
+            view.updateCells(newCells, alternateCells, changedRows, null);
+            // Layouts of the replaced string are dropped, those of alternate cells are kept
+            assertEquals(cached, view.cachedCellLayouts());
+        }
+    }
+
+    @Test
+    public void updateWithoutChangesLaysOutNothing() {
+        var created = view.createdCellLayouts();
+        view.updateCells(copy(cells), alternateCells, new int[TermDateData.MAX_COLUMN_COUNT], null);
+        measure(WIDTH);
+        assertEquals(created, view.createdCellLayouts());
+    }
+
+    @Test
+    public void tapClicksCell() {
+        var clicks = new ArrayList<String>();
+        view.setOnCellClickListener((column, row) -> clicks.add(column + " " + row));
+        // Middle of the last cell, rows are about as high and data columns wider than even
+        var x = WIDTH - WIDTH / (COLUMN_COUNT + 1) / 2;
+        var y = view.getMeasuredHeight() - view.getMeasuredHeight() / (ROW_COUNT + 1) / 2;
+        touch(MotionEvent.ACTION_DOWN, 0, x, y);
+        touch(MotionEvent.ACTION_UP, 100, x, y);
+        assertEquals(List.of(COLUMN_COUNT + " " + (ROW_COUNT - 1)), clicks);
+    }
+
+    @Test
+    public void dragAndLongPressDoNotClick() {
+        var clicks = new ArrayList<String>();
+        view.setOnCellClickListener((column, row) -> clicks.add(column + " " + row));
+        // Middle of the last cell, rows are about as high and data columns wider than even
+        var x = WIDTH - WIDTH / (COLUMN_COUNT + 1) / 2;
+        var y = view.getMeasuredHeight() - view.getMeasuredHeight() / (ROW_COUNT + 1) / 2;
+        var slop = ViewConfiguration.get(view.getContext()).getScaledTouchSlop();
+        // Dragged away and back
+        touch(MotionEvent.ACTION_DOWN, 0, x, y);
+        touch(MotionEvent.ACTION_MOVE, 50, x, y - slop * 2);
+        touch(MotionEvent.ACTION_UP, 100, x, y);
+        // Held in place
+        touch(MotionEvent.ACTION_DOWN, 0, x, y);
+        touch(MotionEvent.ACTION_UP, ViewConfiguration.getLongPressTimeout(), x, y);
+        // Taken over by a scrolling parent
+        touch(MotionEvent.ACTION_DOWN, 0, x, y);
+        touch(MotionEvent.ACTION_CANCEL, 50, x, y);
+        touch(MotionEvent.ACTION_UP, 100, x, y);
+        assertEquals(List.of(), clicks);
+    }
+
+    @Test
+    public void newWidthLaysOutEverythingAgain() {
+        var created = view.createdCellLayouts();
+        measure(WIDTH / 2);
+        assertEquals(created, view.createdCellLayouts());
+    }
+}